@@ -0,0 +1,62 @@
+package mfetcher.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import mfetcher.Coord;
+
+/**
+ * Benchmarks {@link Coord} hashing and equality by building and probing large hash maps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CoordBench {
+
+    @Param({"1000", "50000"}) public int size;
+
+    private List<Coord> coords, probes;
+    private Map<Coord,Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup () {
+        coords = make();
+        probes = make(); // equal to, but distinct from, coords
+        map = new HashMap<Coord,Integer>();
+        for (int ii = 0; ii < coords.size(); ii++) map.put(coords.get(ii), ii);
+    }
+
+    @Benchmark
+    public Map<Coord,Integer> build () {
+        Map<Coord,Integer> map = new HashMap<Coord,Integer>();
+        for (int ii = 0; ii < coords.size(); ii++) map.put(coords.get(ii), ii);
+        return map;
+    }
+
+    @Benchmark
+    public void lookup (Blackhole bh) {
+        for (Coord probe : probes) bh.consume(map.get(probe));
+    }
+
+    private List<Coord> make () {
+        // a mix of realistic shapes, including group/artifact pairs which are swaps of one another
+        List<Coord> coords = new ArrayList<Coord>(size);
+        for (int ii = 0; ii < size; ii++) {
+            String group = "com.example.group" + (ii % 97);
+            String artifact = "artifact-" + (ii / 97);
+            String version = "1." + (ii % 13) + "." + (ii % 7);
+            if (ii % 2 == 0) coords.add(new Coord(group, artifact, version, "jar"));
+            else coords.add(new Coord(artifact, group, version, "jar"));
+        }
+        return coords;
+    }
+}
@@ -0,0 +1,126 @@
+package mfetcher.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import mfetcher.Coord;
+
+/**
+ * Generates a synthetic Maven repository on disk. The repository contains {@code depth} levels of
+ * {@code width} artifacts each; every artifact depends on {@code fanout} artifacts in the next
+ * level. When {@code conflictPct} is non-zero, every artifact also exists in a second version, and
+ * that percentage of dependencies refer to it, giving the conflict resolver work to do.
+ */
+public class RepoGenerator {
+
+    public static final String GROUP = "mfetcher.gen";
+
+    public final int width, depth, fanout, conflictPct, artifactKb;
+
+    public RepoGenerator (int width, int depth, int fanout, int conflictPct, int artifactKb) {
+        this.width = width;
+        this.depth = depth;
+        this.fanout = Math.min(fanout, width);
+        this.conflictPct = conflictPct;
+        this.artifactKb = artifactKb;
+    }
+
+    /** Writes the repository into {@code root}. */
+    public void generate (Path root) throws IOException {
+        Random rando = new Random(42);
+        for (int level = 0; level < depth; level++) {
+            for (int ii = 0; ii < width; ii++) {
+                write(root, level, ii, "1.0", rando);
+                if (conflictPct > 0) write(root, level, ii, "1.1", rando);
+            }
+        }
+    }
+
+    /** Returns the coords of the top level artifacts, from which the whole repository is
+      * reachable (given sufficient fanout). */
+    public List<Coord> roots () {
+        List<Coord> roots = new ArrayList<Coord>();
+        for (int ii = 0; ii < width; ii++) roots.add(new Coord(GROUP, name(0, ii), "1.0", "jar"));
+        return roots;
+    }
+
+    protected String name (int level, int index) {
+        return "lib-" + level + "-" + index;
+    }
+
+    protected void write (Path root, int level, int index, String version, Random rando)
+        throws IOException {
+        String name = name(level, index);
+        Path dir = root.resolve(GROUP.replace('.', '/')).resolve(name).resolve(version);
+        Files.createDirectories(dir);
+
+        StringBuilder pom = new StringBuilder();
+        pom.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        pom.append("<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n");
+        pom.append("  <modelVersion>4.0.0</modelVersion>\n");
+        pom.append("  <groupId>").append(GROUP).append("</groupId>\n");
+        pom.append("  <artifactId>").append(name).append("</artifactId>\n");
+        pom.append("  <version>").append(version).append("</version>\n");
+        if (level + 1 < depth) {
+            pom.append("  <dependencies>\n");
+            for (int ff = 0; ff < fanout; ff++) {
+                int dindex = (index + ff) % width;
+                boolean conflict = (index * 31 + dindex * 17 + level) % 100 < conflictPct;
+                pom.append("    <dependency>\n");
+                pom.append("      <groupId>").append(GROUP).append("</groupId>\n");
+                pom.append("      <artifactId>").append(name(level + 1, dindex)).
+                    append("</artifactId>\n");
+                pom.append("      <version>").append(conflict ? "1.1" : "1.0").
+                    append("</version>\n");
+                pom.append("    </dependency>\n");
+            }
+            pom.append("  </dependencies>\n");
+        }
+        pom.append("</project>\n");
+        writeWithSha1(dir.resolve(name + "-" + version + ".pom"),
+                      pom.toString().getBytes(StandardCharsets.UTF_8));
+
+        // a valid jar with a single stored entry of random (incompressible) bytes
+        Path jar = dir.resolve(name + "-" + version + ".jar");
+        try (OutputStream out = Files.newOutputStream(jar);
+             ZipOutputStream zout = new ZipOutputStream(out)) {
+            zout.putNextEntry(new ZipEntry(name.replace('-', '/') + "/data.bin"));
+            byte[] data = new byte[1024];
+            for (int kk = 0; kk < artifactKb; kk++) {
+                rando.nextBytes(data);
+                zout.write(data);
+            }
+            zout.closeEntry();
+        }
+        writeSha1(jar, Files.readAllBytes(jar));
+    }
+
+    protected static void writeWithSha1 (Path file, byte[] data) throws IOException {
+        Files.write(file, data);
+        writeSha1(file, data);
+    }
+
+    protected static void writeSha1 (Path file, byte[] data) throws IOException {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            Path sha1 = file.resolveSibling(file.getFileName() + ".sha1");
+            Files.write(sha1, sb.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
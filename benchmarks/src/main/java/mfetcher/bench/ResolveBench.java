@@ -0,0 +1,129 @@
+package mfetcher.bench;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import mfetcher.Coord;
+import mfetcher.DependencyManager;
+import mfetcher.RepoServer;
+
+/**
+ * Benchmarks {@link DependencyManager} construction and resolution against a generated repository
+ * served over loopback HTTP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResolveBench {
+
+    @Param({"20"}) public int width;
+    @Param({"5"}) public int depth;
+    @Param({"3"}) public int fanout;
+    @Param({"10"}) public int conflictPct;
+    @Param({"16"}) public int artifactKb;
+
+    private Path work;
+    private RepoServer server;
+    private List<String> repos;
+    private List<Coord> roots;
+
+    /** A local repository into which everything has already been resolved. */
+    private Path warmRepo;
+    private DependencyManager warm, warmUncached;
+
+    /** An empty local repository, recreated for every invocation of {@link #coldResolve}. */
+    private Path coldRepo;
+    private DependencyManager cold;
+
+    @Setup(Level.Trial)
+    public void setup () throws IOException {
+        work = Files.createTempDirectory("mfetcher-bench");
+        Path remote = work.resolve("remote");
+        RepoGenerator gen = new RepoGenerator(width, depth, fanout, conflictPct, artifactKb);
+        gen.generate(remote);
+        server = new RepoServer();
+        server.addTree(remote);
+        repos = server.repos();
+        roots = gen.roots();
+
+        warmRepo = work.resolve("warm");
+        warm = new DependencyManager(warmRepo, repos, false, false);
+        check(warm.resolveDependencies(roots));
+        System.setProperty("mfetcher.result.cache", "false");
+        try {
+            warmUncached = new DependencyManager(warmRepo, repos, false, false);
+        } finally {
+            System.clearProperty("mfetcher.result.cache");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () throws IOException {
+        server.stop();
+        delete(work);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupCold () throws IOException {
+        coldRepo = work.resolve("cold");
+        delete(coldRepo);
+        cold = new DependencyManager(coldRepo, repos, false, false);
+    }
+
+    @Benchmark
+    public DependencyManager construct () {
+        return new DependencyManager(warmRepo, repos, false, false);
+    }
+
+    @Benchmark
+    public Map<Coord,Path> coldResolve () {
+        return cold.resolveDependencies(roots);
+    }
+
+    @Benchmark
+    public Map<Coord,Path> warmResolve () {
+        return warm.resolveDependencies(roots);
+    }
+
+    /** Resolves against a fully populated local repository without the result cache, so that the
+      * graph is collected every time. */
+    @Benchmark
+    public Map<Coord,Path> warmResolveUncached () {
+        return warmUncached.resolveDependencies(roots);
+    }
+
+    private static void check (Map<Coord,Path> result) {
+        for (Map.Entry<Coord,Path> entry : result.entrySet()) {
+            if (entry.getValue() == null) throw new IllegalStateException(
+                "Failed to resolve " + entry.getKey());
+        }
+    }
+
+    private static void delete (Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult visitFile (Path file, BasicFileAttributes attrs)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override public FileVisitResult postVisitDirectory (Path dir, IOException exn)
+                throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package mfetcher.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import mfetcher.MavenSettings;
+
+/**
+ * Benchmarks {@link MavenSettings} parsing (of the current user's settings), and obtaining the
+ * shared settings, which only checks whether the settings files have changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SettingsBench {
+
+    @Benchmark
+    public MavenSettings parse () {
+        return new MavenSettings();
+    }
+
+    @Benchmark
+    public MavenSettings shared () {
+        return MavenSettings.shared();
+    }
+}
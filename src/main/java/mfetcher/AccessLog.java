@@ -0,0 +1,226 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers when the artifacts in a local repository were last used, so that the least recently
+ * used can be evicted (see {@link DependencyManager#compactLocalRepository}). Use is tracked per
+ * version directory (e.g. {@code junit/junit/4.11}) in an {@link AppendLog} in the local
+ * repository. Each line is
+ * {@code <millis> TAB <dir>}, the directory being relative to the local repository; a time of zero
+ * records that the directory has since been evicted. To keep the log small, each process writes a
+ * directory's use at most once an hour, but remembers its own uses exactly.
+ */
+class AccessLog {
+
+    /** A version directory of the local repository, and what we know of it. */
+    public static class Version {
+        public final Path dir;
+        public final String groupId;
+        public final String artifactId;
+        public final String version;
+        /** The total size of the files in {@link #dir}. */
+        public final long size;
+        /** When the directory was last used, or if we have no record of that, last modified. */
+        public final long lastAccess;
+
+        public Version (Path dir, String groupId, String artifactId, String version,
+                        long size, long lastAccess) {
+            this.dir = dir;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        @Override public String toString () {
+            return groupId + ":" + artifactId + ":" + version + " (" + size + " bytes)";
+        }
+    }
+
+    private static final String FILE = "access.log";
+    private static final long RESOLUTION = 60*60*1000L;
+
+    private static final ConcurrentMap<Path,AccessLog> logs =
+        new ConcurrentHashMap<Path,AccessLog>();
+
+    private final Path localRepo;
+    private final AppendLog log;
+    private Map<String,Long> accessed; // lazily loaded, then updated with our uses
+    private final Map<String,Long> written = new HashMap<String,Long>(); // our last log lines
+
+    /** Returns the log for the local repository at {@code localRepo}, which is shared by all
+      * dependency managers in this process. */
+    public static AccessLog forRepo (Path localRepo) {
+        Path repo = localRepo.toAbsolutePath().normalize();
+        AccessLog log = logs.get(repo);
+        if (log == null) {
+            AccessLog created = new AccessLog(repo);
+            log = logs.putIfAbsent(repo, created);
+            if (log == null) log = created;
+        }
+        return log;
+    }
+
+    protected AccessLog (Path localRepo) {
+        this.localRepo = localRepo;
+        this.log = new AppendLog(localRepo.resolve(".mfetcher").resolve(FILE));
+    }
+
+    /** Records that {@code files} (artifacts in our local repository, or null) were used now. Only
+      * our first use of each version directory in each hour is actually written. */
+    public synchronized void accessed (Collection<Path> files) {
+        long now = System.currentTimeMillis();
+        Map<String,Long> accessed = load();
+        List<String> lines = new ArrayList<String>();
+        for (Path file : files) {
+            String dir = key(file);
+            if (dir == null) continue;
+            accessed.put(dir, now);
+            Long when = written.get(dir);
+            if (when != null && now - when < RESOLUTION) continue;
+            written.put(dir, now);
+            lines.add(now + "\t" + dir);
+        }
+        if (!lines.isEmpty()) log.append(lines);
+    }
+
+    /** Returns when the version directory {@code dir} was last used, or zero if we don't know. */
+    public synchronized long lastAccess (Path dir) {
+        Long when = load().get(localRepo.relativize(dir.toAbsolutePath().normalize()).toString());
+        return when == null ? 0L : when;
+    }
+
+    /** Returns true if the version directory {@code dir} may have been used (by this process or
+      * any other) after {@code since}. The log is reread for the latter: another process's use is
+      * seen if it wrote it, and assumed if it wrote a use within the last hour (as it may have used
+      * the directory since without writing that). */
+    public synchronized boolean usedSince (Path dir, long since) {
+        String key = localRepo.relativize(dir.toAbsolutePath().normalize()).toString();
+        Long ours = load().get(key);
+        if (ours != null && ours > since) return true;
+        Long logged = parse(log.read()).get(key);
+        if (logged == null || logged.equals(written.get(key))) return false;
+        return logged > since || System.currentTimeMillis() - logged < RESOLUTION;
+    }
+
+    /** Records that the version directory {@code dir} has been evicted. */
+    public synchronized void evicted (Path dir) {
+        String key = localRepo.relativize(dir.toAbsolutePath().normalize()).toString();
+        written.remove(key);
+        if (load().remove(key) != null) log.append("0\t" + key);
+    }
+
+    /** Returns the version directories of our local repository, least recently used first. */
+    public List<Version> versions () throws IOException {
+        final Map<Path,long[]> stats = new HashMap<Path,long[]>(); // dir -> size, last modified
+        final Set<Path> versions = new HashSet<Path>();
+        if (!Files.isDirectory(localRepo)) return new ArrayList<Version>();
+        Files.walkFileTree(localRepo, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult preVisitDirectory (
+                Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName().toString().startsWith(".") && !dir.equals(localRepo) ?
+                    FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+            @Override public FileVisitResult visitFile (Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                Path dir = file.getParent();
+                long[] stat = stats.get(dir);
+                if (stat == null) stats.put(dir, stat = new long[2]);
+                stat[0] += attrs.size();
+                stat[1] = Math.max(stat[1], attrs.lastModifiedTime().toMillis());
+                if (isVersionFile(dir, file)) versions.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<Version> result = new ArrayList<Version>(versions.size());
+        for (Path dir : versions) {
+            Path rel = localRepo.relativize(dir);
+            int count = rel.getNameCount();
+            if (count < 3) continue;
+            StringBuilder groupId = new StringBuilder();
+            for (int ii = 0; ii < count-2; ii++) {
+                if (ii > 0) groupId.append('.');
+                groupId.append(rel.getName(ii));
+            }
+            long[] stat = stats.get(dir);
+            long when = lastAccess(dir);
+            result.add(new Version(dir, groupId.toString(), rel.getName(count-2).toString(),
+                                   rel.getName(count-1).toString(), stat[0],
+                                   when > 0 ? when : stat[1]));
+        }
+        Collections.sort(result, new Comparator<Version>() {
+            public int compare (Version a, Version b) {
+                return Long.compare(a.lastAccess, b.lastAccess);
+            }
+        });
+        return result;
+    }
+
+    protected Map<String,Long> load () {
+        if (accessed != null) return accessed;
+        List<String> lines = log.read();
+        accessed = parse(lines);
+        log.compact(lines.size(), accessed);
+        return accessed;
+    }
+
+    /** Returns the last use of each directory recorded by {@code lines} of the log. */
+    protected static Map<String,Long> parse (List<String> lines) {
+        Map<String,Long> accessed = new HashMap<String,Long>();
+        for (String line : lines) {
+            String[] bits = line.split("\t", 2);
+            if (bits.length != 2) continue; // a torn write, perhaps
+            try {
+                long when = Long.parseLong(bits[0]);
+                if (when == 0) accessed.remove(bits[1]);
+                else {
+                    Long prev = accessed.get(bits[1]);
+                    if (prev == null || prev < when) accessed.put(bits[1], when);
+                }
+            } catch (NumberFormatException e) {
+                continue;
+            }
+        }
+        return accessed;
+    }
+
+    /** Returns the version directory of {@code file} relative to our local repository, or null if
+      * it is not in our local repository. */
+    private String key (Path file) {
+        if (file == null) return null;
+        Path dir = file.toAbsolutePath().normalize().getParent();
+        return (dir == null || !dir.startsWith(localRepo) || dir.equals(localRepo)) ? null :
+            localRepo.relativize(dir).toString();
+    }
+
+    /** Returns true if {@code file} is named as an artifact of version directory {@code dir}
+      * ({@code <artifactId>-<version>...}, allowing for timestamped snapshots). */
+    private static boolean isVersionFile (Path dir, Path file) {
+        Path parent = dir.getParent();
+        if (parent == null) return false;
+        String version = dir.getFileName().toString();
+        if (version.endsWith("-SNAPSHOT")) {
+            version = version.substring(0, version.length() - "SNAPSHOT".length());
+        }
+        return file.getFileName().toString().startsWith(parent.getFileName() + "-" + version);
+    }
+}
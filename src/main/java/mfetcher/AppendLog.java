@@ -0,0 +1,87 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only log of tab separated lines, as kept in the local repository by
+ * {@link MissingCache}, {@link AccessLog} and {@link Verifier}. Each appends a line whenever it
+ * learns something, replays the log to recover what is known, and compacts the log when it comes
+ * to hold mostly superseded lines. Lines are small, so appends from concurrent processes won't
+ * interleave; readers skip any line that is torn nonetheless. Failures are not fatal (the log only
+ * saves work), so they are reported only when verbose.
+ */
+class AppendLog {
+
+    public final Path file;
+
+    public AppendLog (Path file) {
+        this.file = file;
+    }
+
+    /** Returns the lines of the log, or no lines if it does not exist or cannot be read. */
+    public List<String> read () {
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            if (DependencyManager.verbose) System.out.println("Failed to read " + file + ": " + e);
+            return Collections.emptyList();
+        }
+    }
+
+    /** Appends {@code line} to the log. */
+    public void append (String line) {
+        append(Collections.singletonList(line));
+    }
+
+    /** Appends {@code lines} to the log, each written separately. */
+    public void append (Collection<String> lines) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(
+                     file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : lines) {
+                    out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            if (DependencyManager.verbose) System.out.println("Failed to update " + file + ": " + e);
+        }
+    }
+
+    /** Rewrites the log to hold only {@code live} (as {@code value TAB key} lines) if most of the
+      * {@code read} lines from which it was replayed are dead weight. */
+    public void compact (int read, Map<String,?> live) {
+        if (read <= 2 * live.size() + 64) return;
+        try {
+            List<String> lines = new ArrayList<String>(live.size());
+            for (Map.Entry<String,?> entry : live.entrySet()) {
+                lines.add(entry.getValue() + "\t" + entry.getKey());
+            }
+            Path tmp = Files.createTempFile(
+                file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(tmp, lines, StandardCharsets.UTF_8);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            if (DependencyManager.verbose) System.out.println("Failed to compact " + file + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,658 @@
+package mfetcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.TransportListener;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.spi.locator.Service;
+import org.eclipse.aether.spi.locator.ServiceLocator;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+
+/**
+ * Wraps the HTTP transporter to download large artifacts as several concurrent ranged requests.
+ * Before an artifact (but not a POM, metadata or checksum) is downloaded, a {@code HEAD} request
+ * asks for its size. If it is larger than {@code mfetcher.chunked.threshold} bytes (default 16MB)
+ * and the server accepts byte ranges, it is split into chunks which are fetched in parallel
+ * ({@code mfetcher.chunked.parallel}, default 4, connections in total) into a preallocated file.
+ * Everything else is downloaded by the HTTP transporter as usual.
+ *
+ * <p>When the connector is resuming downloads (the default), the progress of each chunk is saved
+ * alongside the partial file, so an interrupted download picks up where its chunks left off. The
+ * transport listener (which computes checksums and reports progress) is fed the data in order:
+ * the chunk at the front streams directly to it, and later chunks' data is read back (from the
+ * page cache, typically) as the front advances over them.</p>
+ *
+ * <p>GETs of repository metadata ({@code maven-metadata.xml} and its checksums) are made
+ * conditional on the validators of the last response for the same URL (see
+ * {@link ValidatorCache}), so rechecking metadata which has not changed costs only a
+ * {@code 304 Not Modified}.</p>
+ *
+ * <p>It also limits the number of concurrent downloads from any one host (across all managers) to
+ * {@code mfetcher.download.perhost} (default 8). A chunked download counts once against this.</p>
+ *
+ * <p>The requests we make ourselves go through the HTTP transporter's own client, so they are
+ * configured (headers, timeouts, credentials, proxy, SSL) and pooled exactly as its requests are.
+ * If that client can't be had (from an unexpected version of the transporter), everything is left
+ * to the transporter.</p>
+ */
+public class ChunkedTransporterFactory implements TransporterFactory, Service {
+
+    public static final String PROP_CHUNKED_THRESHOLD = "mfetcher.chunked.threshold";
+    public static final String PROP_CHUNKED_PARALLEL = "mfetcher.chunked.parallel";
+    public static final String PROP_PER_HOST = "mfetcher.download.perhost";
+
+    private final HttpTransporterFactory http = new HttpTransporterFactory();
+
+    @Override public void initService (ServiceLocator locator) {
+        http.initService(locator);
+    }
+
+    @Override public float getPriority () {
+        return http.getPriority();
+    }
+
+    @Override public Transporter newInstance (RepositorySystemSession session,
+                                              RemoteRepository repo)
+        throws NoTransporterException {
+        Transporter delegate = http.newInstance(session, repo);
+        long threshold = Long.getLong(PROP_CHUNKED_THRESHOLD, 16*1024*1024);
+        int parallel = Integer.getInteger(PROP_CHUNKED_PARALLEL, 4);
+        if (parallel < 2) threshold = 0; // no chunking
+        return new ChunkedTransporter(session, repo, delegate, threshold, parallel);
+    }
+
+    /** Reports an unexpected HTTP response status. */
+    protected static class StatusException extends IOException {
+        public final int status;
+        public StatusException (int status, URI uri) {
+            super("HTTP " + status + " for " + uri);
+            this.status = status;
+        }
+    }
+
+    protected static class ChunkedTransporter implements Transporter {
+        public final RepositorySystemSession session;
+        public final RemoteRepository repo;
+        public final Transporter delegate;
+        /** The size above which to chunk downloads, or zero to never chunk. */
+        public final long threshold;
+        public final int parallel;
+
+        private final URI baseUri;
+        private final Semaphore hostLimit;
+        private final ValidatorCache validators;
+        private final HttpClient client; // the delegate's, or null if we can't get at it
+        private final Map<?,?> headers; // likewise
+
+        public ChunkedTransporter (RepositorySystemSession session, RemoteRepository repo,
+                                   Transporter delegate, long threshold, int parallel) {
+            this.session = session;
+            this.repo = repo;
+            this.delegate = delegate;
+            this.threshold = threshold;
+            this.parallel = parallel;
+            String url = repo.getUrl();
+            this.baseUri = URI.create(url.endsWith("/") ? url : url + "/");
+            this.hostLimit = hostLimit(baseUri.getHost() + ":" + baseUri.getPort());
+            this.validators = new ValidatorCache(
+                session.getLocalRepository().getBasedir().toPath());
+            Object client = field(delegate, "client"), headers = field(delegate, "headers");
+            boolean usable = client instanceof HttpClient &&
+                (headers == null || headers instanceof Map);
+            this.client = usable ? (HttpClient)client : null;
+            this.headers = usable ? (Map<?,?>)headers : null;
+        }
+
+        @Override public int classify (Throwable error) {
+            if (error instanceof StatusException) {
+                return ((StatusException)error).status == 404 ? ERROR_NOT_FOUND : ERROR_OTHER;
+            }
+            return delegate.classify(error);
+        }
+
+        @Override public void peek (PeekTask task) throws Exception {
+            hostLimit.acquire();
+            try {
+                delegate.peek(task);
+            } finally {
+                hostLimit.release();
+            }
+        }
+
+        @Override public void put (PutTask task) throws Exception {
+            delegate.put(task);
+        }
+
+        @Override public void get (GetTask task) throws Exception {
+            hostLimit.acquire();
+            try {
+                fetch(task);
+            } finally {
+                hostLimit.release();
+            }
+        }
+
+        protected void fetch (GetTask task) throws Exception {
+            File file = task.getDataFile();
+            String path = task.getLocation().getPath();
+            if (client == null || file == null) {
+                delegate.get(task);
+                return;
+            }
+            if (path.substring(path.lastIndexOf('/') + 1).startsWith("maven-metadata")) {
+                fetchConditional(task);
+                return;
+            }
+            if (threshold <= 0 || path.endsWith(".pom") || path.endsWith(".xml") ||
+                path.endsWith(".sha1") || path.endsWith(".md5") || path.endsWith(".asc")) {
+                delegate.get(task);
+                return;
+            }
+
+            URI uri = baseUri.resolve(task.getLocation());
+            Download dl = new Download(task, uri);
+            if (task.getResumeOffset() > 0) {
+                // a partial file without chunk state was not downloaded by us, so let the HTTP
+                // transporter resume it in the usual way
+                if (!dl.load()) {
+                    delegate.get(task);
+                    return;
+                }
+                if (dl.resume()) return;
+                // the file changed on the server: the old download's chunks, progress and failure
+                // are no use to us, so start over with a new one; the HTTP transporter would only
+                // append to the partial file, so we can't hand it back
+                dl = new Download(task, uri);
+                if (dl.probe()) dl.fresh();
+                else dl.whole();
+                return;
+            }
+            // only a download known to be large is worth chunking
+            if (dl.probe() && dl.total > threshold) dl.fresh();
+            else delegate.get(task);
+        }
+
+        /** Fetches {@code task}'s resource, unless it has not changed since we last fetched it,
+          * in which case the copy we kept is delivered instead. */
+        protected void fetchConditional (GetTask task) throws Exception {
+            URI uri = baseUri.resolve(task.getLocation());
+            ValidatorCache.Entry cached = validators.get(uri.toString());
+            HttpGet get = prepare(new HttpGet(uri));
+            if (cached != null && cached.etag != null) {
+                get.setHeader("If-None-Match", cached.etag);
+            }
+            if (cached != null && cached.lastModified != null) {
+                get.setHeader("If-Modified-Since", cached.lastModified);
+            }
+            HttpResponse rsp = client.execute(get);
+            Header etag, lastmod;
+            boolean ok = false;
+            try {
+                int status = rsp.getStatusLine().getStatusCode();
+                if (status == 304 && cached != null) {
+                    EntityUtils.consume(rsp.getEntity());
+                    ok = true;
+                    try (InputStream in = Files.newInputStream(cached.body)) {
+                        receive(in, Files.size(cached.body), task);
+                    }
+                    return;
+                }
+                if (status != 200) throw new StatusException(status, uri);
+                receive(rsp.getEntity().getContent(), rsp.getEntity().getContentLength(), task);
+                etag = rsp.getFirstHeader("ETag");
+                lastmod = rsp.getFirstHeader("Last-Modified");
+                ok = true;
+            } finally {
+                if (ok) EntityUtils.consume(rsp.getEntity());
+                else get.abort();
+            }
+            try {
+                // the checksums we kept are for the old body: they must be fetched afresh too (a
+                // checksum's validators may not change, as its length doesn't)
+                String url = uri.toString();
+                if (!url.endsWith(".sha1") && !url.endsWith(".md5")) {
+                    validators.remove(url + ".sha1");
+                    validators.remove(url + ".md5");
+                }
+                validators.put(url, etag == null ? null : etag.getValue(),
+                               lastmod == null ? null : lastmod.getValue(),
+                               task.getDataFile().toPath());
+            } catch (IOException e) {
+                if (DependencyManager.verbose) System.out.println(
+                    "Failed to remember validators for " + uri + ": " + e);
+            }
+        }
+
+        @Override public void close () {
+            delegate.close();
+        }
+
+        /** Adds to {@code request} the headers that the HTTP transporter would send. */
+        protected <R extends HttpUriRequest> R prepare (R request) {
+            request.setHeader("Cache-Control", "no-cache, no-store");
+            request.setHeader("Pragma", "no-cache");
+            if (headers != null) for (Map.Entry<?,?> entry : headers.entrySet()) {
+                if (!(entry.getKey() instanceof String)) continue;
+                if (entry.getValue() instanceof String) {
+                    request.setHeader((String)entry.getKey(), (String)entry.getValue());
+                } else request.removeHeaders((String)entry.getKey());
+            }
+            return request;
+        }
+
+        /** A single download, comprising one or more chunks. */
+        protected class Download {
+            public final GetTask task;
+            public final URI uri;
+            public final Path file;
+            public final Path state;
+
+            private final List<Chunk> chunks = new ArrayList<Chunk>();
+            private long total;
+            private String validator;
+            private FileChannel channel;
+
+            // the listener's progress through the file, guarded by this
+            private long fed;
+            private long unsaved;
+            private Throwable failure;
+
+            public Download (GetTask task, URI uri) {
+                this.task = task;
+                this.uri = uri;
+                this.file = task.getDataFile().toPath();
+                // only partial files (which survive failures) are worth remembering state for
+                this.state = file.getFileName().toString().endsWith(".part") ?
+                    file.resolveSibling(file.getFileName() + ".chunks") : null;
+            }
+
+            /** Resumes a previously interrupted download, whose state has been {@link #load}ed.
+              * @return true if the download was resumed (and is now complete), false if it could
+              * not be resumed (because the file changed on the server) and must be started afresh.
+              */
+            public boolean resume () throws Exception {
+                if (Files.size(file) != total) return false;
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+                    long prefix = 0;
+                    for (Chunk chunk : chunks) {
+                        prefix = chunk.done;
+                        if (chunk.done < chunk.end) break;
+                    }
+                    fed = prefix;
+                    task.getListener().transportStarted(prefix, total);
+                    try {
+                        run();
+                    } catch (StatusException e) {
+                        if (e.status == 200) return false; // the file changed, start over
+                        throw e;
+                    }
+                    return true;
+                } finally {
+                    channel.close();
+                }
+            }
+
+            /** Asks the server for the size and validator of the file.
+              * @return true if the server reported its size and will send it to us in pieces. */
+            public boolean probe () throws Exception {
+                HttpHead head = prepare(new HttpHead(uri));
+                HttpResponse rsp = client.execute(head);
+                try {
+                    Header length = rsp.getFirstHeader("Content-Length");
+                    Header ranges = rsp.getFirstHeader("Accept-Ranges");
+                    if (rsp.getStatusLine().getStatusCode() != 200 || length == null ||
+                        ranges == null || !ranges.getValue().trim().equals("bytes")) return false;
+                    total = Long.parseLong(length.getValue().trim());
+                    Header etag = rsp.getFirstHeader("ETag");
+                    Header lastmod = rsp.getFirstHeader("Last-Modified");
+                    validator = etag != null ? etag.getValue() :
+                        (lastmod != null ? lastmod.getValue() : "");
+                    return total >= 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                } finally {
+                    EntityUtils.consume(rsp.getEntity());
+                }
+            }
+
+            /** Downloads the file, whose size and validator have been {@link #probe}d, from
+              * scratch: in chunks if it is large, otherwise as one. */
+            public void fresh () throws Exception {
+                if (state != null) Files.deleteIfExists(state);
+                int count = (total > threshold) ? parallel : 1;
+                long size = (total + count - 1) / count;
+                for (long start = 0; start < total; start += size) {
+                    chunks.add(new Chunk(start, Math.min(start + size, total), start));
+                }
+                channel = FileChannel.open(file, StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                           StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    if (total > 0) channel.write(ByteBuffer.allocate(1), total - 1); // preallocate
+                    save();
+                    task.getListener().transportStarted(0, total);
+                    run();
+                } finally {
+                    channel.close();
+                }
+            }
+
+            /** Downloads the file from scratch with a single plain request. */
+            public void whole () throws Exception {
+                if (state != null) Files.deleteIfExists(state);
+                HttpGet get = prepare(new HttpGet(uri));
+                HttpResponse rsp = client.execute(get);
+                boolean ok = false;
+                try {
+                    int status = rsp.getStatusLine().getStatusCode();
+                    if (status != 200) throw new StatusException(status, uri);
+                    receive(rsp.getEntity().getContent(), rsp.getEntity().getContentLength(),
+                            task);
+                    ok = true;
+                } finally {
+                    if (ok) EntityUtils.consume(rsp.getEntity());
+                    else get.abort();
+                }
+            }
+
+            /** Fetches all incomplete chunks, the first (on this thread) and the rest
+              * concurrently. */
+            protected void run () throws Exception {
+                Chunk first = null;
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (final Chunk chunk : chunks) {
+                    if (chunk.done >= chunk.end) continue;
+                    if (first == null) {
+                        first = chunk;
+                        continue;
+                    }
+                    futures.add(CHUNKERS.submit(new Callable<Void>() {
+                        public Void call () throws Exception {
+                            chunk.fetch();
+                            return null;
+                        }
+                    }));
+                }
+                try {
+                    if (first != null) first.fetch();
+                } catch (Throwable t) {
+                    fail(t);
+                }
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        fail(e.getCause());
+                    }
+                }
+                synchronized (this) {
+                    if (failure == null && fed < total) failure = new IOException(
+                        "Download of " + uri + " incomplete: " + fed + " of " + total);
+                    if (failure != null) {
+                        saveQuietly();
+                        if (failure instanceof Exception) throw (Exception)failure;
+                        throw (Error)failure;
+                    }
+                }
+                if (state != null) Files.deleteIfExists(state);
+            }
+
+            protected synchronized void fail (Throwable cause) {
+                if (failure == null) failure = cause;
+            }
+
+            protected synchronized boolean failed () {
+                return failure != null;
+            }
+
+            /** Notes that {@code data} has been written at {@code pos} by {@code chunk}, and feeds
+              * the listener as much of the file as is now contiguously available to it. */
+            protected synchronized void progressed (Chunk chunk, long pos, ByteBuffer data)
+                throws Exception {
+                int length = data.remaining();
+                chunk.done = pos + length;
+                TransportListener listener = task.getListener();
+                if (pos == fed) {
+                    listener.transportProgressed(data);
+                    fed += length;
+                }
+                // if this completed the chunk at the front, read back what its successors have
+                // already written
+                if (chunk.done == chunk.end) {
+                    ByteBuffer buf = ByteBuffer.allocate(32*1024);
+                    for (Chunk next : chunks) {
+                        if (next.end <= fed) continue;
+                        if (next.start > fed) break;
+                        while (fed < next.done) {
+                            buf.clear();
+                            buf.limit((int)Math.min(buf.capacity(), next.done - fed));
+                            int read = channel.read(buf, fed);
+                            if (read <= 0) throw new IOException("Short read of " + file);
+                            buf.flip();
+                            listener.transportProgressed(buf);
+                            fed += read;
+                        }
+                        if (next.done < next.end) break;
+                    }
+                }
+                unsaved += length;
+                if (unsaved >= 4*1024*1024) {
+                    unsaved = 0;
+                    save();
+                }
+            }
+
+            protected boolean load () throws IOException {
+                if (state == null) return false;
+                List<String> lines;
+                try {
+                    lines = Files.readAllLines(state, StandardCharsets.UTF_8);
+                } catch (NoSuchFileException e) {
+                    return false;
+                }
+                if (lines.size() < 4 || !STATE_HEADER.equals(lines.get(0)) ||
+                    !uri.toString().equals(lines.get(1))) return false;
+                try {
+                    total = Long.parseLong(lines.get(2));
+                    validator = lines.get(3);
+                    for (String line : lines.subList(4, lines.size())) {
+                        String[] bits = line.split(" ");
+                        chunks.add(new Chunk(Long.parseLong(bits[0]), Long.parseLong(bits[1]),
+                                             Long.parseLong(bits[2])));
+                    }
+                } catch (RuntimeException e) {
+                    chunks.clear();
+                    return false;
+                }
+                return !chunks.isEmpty();
+            }
+
+            protected synchronized void save () throws IOException {
+                // there's nothing to resume in a download that was made with a single request
+                if (state == null || chunks.size() < 2) return;
+                List<String> lines = new ArrayList<String>();
+                lines.add(STATE_HEADER);
+                lines.add(uri.toString());
+                lines.add(String.valueOf(total));
+                lines.add(validator);
+                for (Chunk chunk : chunks) {
+                    lines.add(chunk.start + " " + chunk.end + " " + chunk.done);
+                }
+                Path tmp = state.resolveSibling(state.getFileName() + ".tmp");
+                Files.write(tmp, lines, StandardCharsets.UTF_8);
+                Files.move(tmp, state, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            protected void saveQuietly () {
+                try {
+                    save();
+                } catch (IOException e) {
+                    if (DependencyManager.verbose) System.out.println(
+                        "Failed to save download state " + state + ": " + e);
+                }
+            }
+
+            /** A range of the file, {@code [start, end)}, of which {@code [start, done)} has been
+              * downloaded. */
+            protected class Chunk {
+                public final long start, end;
+                public volatile long done;
+
+                public Chunk (long start, long end, long done) {
+                    this.start = start;
+                    this.end = end;
+                    this.done = done;
+                }
+
+                /** Requests the remainder of this chunk and copies it into the file. */
+                public void fetch () throws Exception {
+                    HttpGet get = prepare(new HttpGet(uri));
+                    get.setHeader("Range", "bytes=" + done + "-" + (end-1));
+                    if (validator.length() > 0) get.setHeader("If-Range", validator);
+                    HttpResponse rsp = client.execute(get);
+                    boolean ok = false;
+                    try {
+                        int status = rsp.getStatusLine().getStatusCode();
+                        long[] range = (status == 206) ? contentRange(rsp) : null;
+                        if (range == null || range[0] != done || range[2] != total) {
+                            // a 200 means the file changed (or the server forgot about ranges)
+                            throw new StatusException(status, uri);
+                        }
+                        copy(rsp.getEntity().getContent());
+                        ok = done >= end;
+                    } finally {
+                        if (ok) EntityUtils.consume(rsp.getEntity());
+                        else get.abort();
+                    }
+                    if (done < end) throw new IOException(
+                        "Premature end of " + uri + " at " + done + " (wanted " + end + ")");
+                }
+
+                /** Copies {@code in} into our portion of the file. */
+                public void copy (InputStream in) throws Exception {
+                    byte[] bytes = new byte[32*1024];
+                    ByteBuffer buf = ByteBuffer.wrap(bytes);
+                    while (done < end && !failed()) {
+                        int read = in.read(bytes, 0, (int)Math.min(bytes.length, end - done));
+                        if (read < 0) break;
+                        long pos = done;
+                        buf.clear();
+                        buf.limit(read);
+                        while (buf.hasRemaining()) channel.write(buf, pos + buf.position());
+                        buf.rewind();
+                        progressed(this, pos, buf);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Copies {@code in} (of {@code length} bytes, or -1 if unknown) to {@code task}'s data file,
+      * reporting its progress to {@code task}'s listener. */
+    private static void receive (InputStream in, long length, GetTask task) throws Exception {
+        TransportListener listener = task.getListener();
+        listener.transportStarted(0, length);
+        try (OutputStream out = new FileOutputStream(task.getDataFile())) {
+            byte[] bytes = new byte[16*1024];
+            for (int read = in.read(bytes); read >= 0; read = in.read(bytes)) {
+                out.write(bytes, 0, read);
+                listener.transportProgressed(ByteBuffer.wrap(bytes, 0, read));
+            }
+        }
+    }
+
+    private static Semaphore hostLimit (String host) {
+        Semaphore limit = HOST_LIMITS.get(host);
+        if (limit == null) {
+            Semaphore created = new Semaphore(Integer.getInteger(PROP_PER_HOST, 8), true);
+            limit = HOST_LIMITS.putIfAbsent(host, created);
+            if (limit == null) limit = created;
+        }
+        return limit;
+    }
+
+    private static final ConcurrentMap<String,Semaphore> HOST_LIMITS =
+        new ConcurrentHashMap<String,Semaphore>();
+
+    private static final String STATE_HEADER = "# mfetcher chunked download v1";
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    /** Returns {@code [first, last, total]} from a response's {@code Content-Range}, or null if it
+      * has none (or one we don't understand, like an unknown total length). */
+    private static long[] contentRange (HttpResponse rsp) {
+        Header header = rsp.getFirstHeader("Content-Range");
+        if (header == null) return null;
+        Matcher m = CONTENT_RANGE.matcher(header.getValue().trim());
+        if (!m.matches()) return null;
+        return new long[] { Long.parseLong(m.group(1)), Long.parseLong(m.group(2)),
+                            Long.parseLong(m.group(3)) };
+    }
+
+    private static final ExecutorService CHUNKERS = Executors.newCachedThreadPool(
+        new ThreadFactory() {
+            public Thread newThread (Runnable task) {
+                Thread thread = new Thread(task, "mfetcher-chunk");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    /** Returns the value of {@code obj}'s private field {@code name}, or null if it has none. */
+    private static Object field (Object obj, String name) {
+        try {
+            Field field = obj.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(obj);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            if (DependencyManager.verbose) System.out.println(
+                "No " + name + " in " + obj.getClass().getName() + ": " + e);
+            return null;
+        }
+    }
+}
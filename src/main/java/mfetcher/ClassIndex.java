@@ -0,0 +1,228 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of a classpath (as produced by {@link DependencyManager#resolveDependencies}) which
+ * maps each directory within its jars (that is, each package, and each resource directory) to the
+ * jars that contain it. A {@link IndexedClassLoader} uses it to look for a class or resource only
+ * in the jars that might contain it, rather than in every jar in turn.
+ *
+ * <p>Indexes are persisted in {@code .mfetcher/classindex} in the local repository, keyed on the
+ * classpath (each artifact's coord, path, size and modification time), and memory mapped when
+ * loaded: only the jar list is read eagerly, directories are found by binary search of the mapped
+ * file, so loading an index costs the same for a few jars as for hundreds.</p>
+ */
+public class ClassIndex {
+
+    private static final int MAGIC = 0x6d666369; // "mfci"
+    private static final int VERSION = 1;
+
+    /** The jars of the classpath, in classpath order. */
+    public final List<Path> jars;
+
+    private final ByteBuffer data;
+    private final int dirCount;
+    private final int tableStart; // the offset of the table of record offsets
+
+    /**
+     * Returns the index of {@code classpath}, loading it from {@code localRepo} if it has been
+     * indexed before, or indexing it (and saving the index) if not. Unresolved (null) artifacts,
+     * and artifacts which are not jars, are omitted.
+     */
+    public static ClassIndex forClasspath (Path localRepo, Map<Coord,Path> classpath)
+        throws IOException {
+        List<Path> jars = new ArrayList<Path>();
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<Coord,Path> entry : classpath.entrySet()) {
+            Path jar = entry.getValue();
+            if (jar == null || !Files.isRegularFile(jar)) continue;
+            jar = jar.toAbsolutePath();
+            jars.add(jar);
+            key.append(entry.getKey()).append('|').append(jar).append('|').
+                append(Files.size(jar)).append('|').
+                append(Files.getLastModifiedTime(jar).toMillis()).append('\n');
+        }
+
+        Path file = localRepo.resolve(".mfetcher").resolve("classindex").resolve(
+            Digests.sha1Hex(key));
+        try {
+            ClassIndex index = load(file);
+            if (index.jars.equals(jars)) return index;
+        } catch (NoSuchFileException e) {
+            // not indexed yet
+        } catch (IOException e) {
+            if (DependencyManager.verbose) System.out.println(
+                "Ignoring invalid class index " + file + ": " + e);
+        }
+        build(jars, file);
+        return load(file);
+    }
+
+    /** Loads (maps) the index saved in {@code file}. */
+    public static ClassIndex load (Path file) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) throw new IOException(
+                "Not an mfetcher class index: " + file);
+            int jarCount = data.getInt();
+            List<Path> jars = new ArrayList<Path>(jarCount);
+            for (int ii = 0; ii < jarCount; ii++) jars.add(Paths.get(getString(data)));
+            int dirCount = data.getInt();
+            return new ClassIndex(jars, data, dirCount, data.position());
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt class index " + file + ": " + e, e);
+        }
+    }
+
+    /** Indexes {@code jars} and saves the index to {@code file}. */
+    public static void build (List<Path> jars, Path file) throws IOException {
+        // map each directory to the (ascending) indices of the jars that contain it
+        TreeMap<String,List<Integer>> dirs = new TreeMap<String,List<Integer>>();
+        for (int ii = 0, ll = jars.size(); ii < ll; ii++) {
+            try (ZipFile zip = new ZipFile(jars.get(ii).toFile())) {
+                for (Enumeration<? extends ZipEntry> en = zip.entries(); en.hasMoreElements(); ) {
+                    String name = en.nextElement().getName();
+                    String dir = name.substring(0, name.lastIndexOf('/') + 1);
+                    List<Integer> in = dirs.get(dir);
+                    if (in == null) dirs.put(dir, in = new ArrayList<Integer>(1));
+                    if (in.isEmpty() || in.get(in.size()-1) != ii) in.add(ii);
+                }
+            }
+        }
+
+        // header, jars, dir count, table of record offsets, then the records themselves
+        List<byte[]> paths = new ArrayList<byte[]>(jars.size());
+        int size = 16;
+        for (Path jar : jars) {
+            byte[] path = jar.toString().getBytes(StandardCharsets.UTF_8);
+            paths.add(path);
+            size += 4 + path.length;
+        }
+        int tableStart = size;
+        size += 4 * dirs.size();
+        List<byte[]> names = new ArrayList<byte[]>(dirs.size());
+        for (Map.Entry<String,List<Integer>> entry : dirs.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += 4 + name.length + 4 + 4 * entry.getValue().size();
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(jars.size());
+        for (byte[] path : paths) buf.putInt(path.length).put(path);
+        buf.putInt(dirs.size());
+        int record = tableStart + 4 * dirs.size(), ii = 0;
+        for (List<Integer> in : dirs.values()) {
+            buf.putInt(tableStart + 4 * ii, record);
+            record += 4 + names.get(ii).length + 4 + 4 * in.size();
+            ii++;
+        }
+        buf.position(tableStart + 4 * dirs.size());
+        ii = 0;
+        for (List<Integer> in : dirs.values()) {
+            byte[] name = names.get(ii++);
+            buf.putInt(name.length).put(name).putInt(in.size());
+            for (int jar : in) buf.putInt(jar);
+        }
+        buf.flip();
+
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) channel.write(buf);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Returns the indices (into {@link #jars}, ascending) of the jars that contain directory
+     * {@code dir} (which must end with {@code /}, or be empty for the root).
+     */
+    public int[] jarsFor (String dir) {
+        byte[] key = dir.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = dirCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = data.getInt(tableStart + 4 * mid);
+            int cmp = compare(record, key);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else {
+                int at = record + 4 + key.length, count = data.getInt(at);
+                int[] jars = new int[count];
+                for (int ii = 0; ii < count; ii++) jars[ii] = data.getInt(at + 4 + 4 * ii);
+                return jars;
+            }
+        }
+        return NO_JARS;
+    }
+
+    /** Returns the indices of the jars that might contain the resource {@code name} (e.g.
+      * {@code com/example/Foo.class}). */
+    public int[] jarsForResource (String name) {
+        return jarsFor(name.substring(0, name.lastIndexOf('/') + 1));
+    }
+
+    /** Creates a class loader which loads from our jars, delegating first to {@code parent}. */
+    public IndexedClassLoader newClassLoader (ClassLoader parent) {
+        return new IndexedClassLoader(this, parent);
+    }
+
+    @Override public String toString () {
+        return "ClassIndex(" + jars.size() + " jars, " + dirCount + " dirs)";
+    }
+
+    protected ClassIndex (List<Path> jars, ByteBuffer data, int dirCount, int tableStart) {
+        this.jars = Collections.unmodifiableList(jars);
+        this.data = data;
+        this.dirCount = dirCount;
+        this.tableStart = tableStart;
+    }
+
+    /** Compares the UTF-8 name of the record at {@code record} with {@code key}, byte-wise. This
+      * agrees with the {@code String} order in which records are written for all names without
+      * supplementary characters (which are unheard of in package names). */
+    private int compare (int record, byte[] key) {
+        int length = data.getInt(record);
+        for (int ii = 0, ll = Math.min(length, key.length); ii < ll; ii++) {
+            int cmp = (data.get(record + 4 + ii) & 0xFF) - (key[ii] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return length - key.length;
+    }
+
+    private static String getString (ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final int[] NO_JARS = new int[0];
+}
@@ -1,23 +1,153 @@
 package mfetcher;
 
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
 
+/**
+ * Identifies a Maven artifact. Coords are immutable, and cache their hash code, so they make
+ * cheap map keys. Large numbers of equal coords can be collapsed into one via {@link #intern}.
+ */
 public class Coord {
 
+    /** Excludes artifacts from the transitive dependencies of a coord. Either id may be {@code *},
+      * which matches any id. */
+    public static class Exclusion implements Comparable<Exclusion> {
+        public final String groupId;
+        public final String artifactId;
+
+        public Exclusion (String groupId, String artifactId) {
+            this.groupId = Objects.requireNonNull(groupId, "groupId");
+            this.artifactId = Objects.requireNonNull(artifactId, "artifactId");
+        }
+
+        @Override public int compareTo (Exclusion other) {
+            int cmp = groupId.compareTo(other.groupId);
+            return cmp != 0 ? cmp : artifactId.compareTo(other.artifactId);
+        }
+
+        @Override public String toString () {
+            return groupId + ":" + artifactId;
+        }
+
+        @Override public int hashCode () {
+            return 31 * groupId.hashCode() + artifactId.hashCode();
+        }
+
+        @Override public boolean equals (Object other) {
+            if (!(other instanceof Exclusion)) return false;
+            Exclusion oe = (Exclusion)other;
+            return oe.groupId.equals(groupId) && oe.artifactId.equals(artifactId);
+        }
+    }
+
     public final String groupId;
     public final String artifactId;
     public final String version;
     public final String kind; // jar, pom, etc.
+    public final String classifier; // null for default
+    public final Set<Exclusion> exclusions; // empty for default, sorted
+
+    private final int hash;
 
-    // TEMP: these are not currently set anywhere, but DependencyManager honors them
-    public String classifier; // null for default
-    public String exclusions; // null for default
+    private static final Map<Coord,WeakReference<Coord>> interned =
+        new WeakHashMap<Coord,WeakReference<Coord>>();
+
+    /**
+     * Parses a coord from {@code groupId:artifactId:version[:kind[:classifier]]}, which is also the
+     * format produced by {@link #toString}. The kind defaults to {@code jar}.
+     *
+     * @throws IllegalArgumentException if {@code text} is not of that form.
+     */
+    public static Coord parse (String text) {
+        String[] parts = new String[5];
+        int count = 0, start = 0;
+        for (int ii = 0, ll = text.length(); ii <= ll; ii++) {
+            if (ii < ll && text.charAt(ii) != ':') continue;
+            if (count == parts.length || ii == start) throw new IllegalArgumentException(
+                "Invalid coordinates (want group:artifact:version[:kind[:classifier]]): " + text);
+            parts[count++] = text.substring(start, ii);
+            start = ii + 1;
+        }
+        if (count < 3) throw new IllegalArgumentException(
+            "Invalid coordinates (want group:artifact:version[:kind[:classifier]]): " + text);
+        return new Coord(parts[0], parts[1], parts[2], count > 3 ? parts[3] : "jar", parts[4]);
+    }
+
+    /**
+     * Parses a comma separated list of {@code groupId:artifactId} exclusions.
+     *
+     * @throws IllegalArgumentException if any exclusion is not of that form.
+     */
+    public static Set<Exclusion> parseExclusions (String excls) {
+        Set<Exclusion> exclusions = new TreeSet<Exclusion>();
+        for (String ex : excls.split(",")) {
+            String[] ids = ex.trim().split(":");
+            if (ids.length != 2) throw new IllegalArgumentException(
+                "Illegal exclusion dependency coordinates: " + excls + " (in exclusion " + ex + ")");
+            exclusions.add(new Exclusion(ids[0], ids[1]));
+        }
+        return exclusions;
+    }
 
     public Coord (String groupId, String artifactId, String version, String kind) {
-        this.groupId = groupId;
-        this.artifactId = artifactId;
-        this.version = version;
-        this.kind = kind;
+        this(groupId, artifactId, version, kind, null, null);
+    }
+
+    public Coord (String groupId, String artifactId, String version, String kind,
+                  String classifier) {
+        this(groupId, artifactId, version, kind, classifier, null);
+    }
+
+    public Coord (String groupId, String artifactId, String version, String kind,
+                  String classifier, Collection<Exclusion> exclusions) {
+        this.groupId = Objects.requireNonNull(groupId, "groupId");
+        this.artifactId = Objects.requireNonNull(artifactId, "artifactId");
+        this.version = Objects.requireNonNull(version, "version");
+        this.kind = Objects.requireNonNull(kind, "kind");
+        this.classifier = (classifier == null || classifier.isEmpty()) ? null : classifier;
+        this.exclusions = (exclusions == null || exclusions.isEmpty()) ?
+            Collections.<Exclusion>emptySet() :
+            Collections.unmodifiableSet(new TreeSet<Exclusion>(exclusions));
+
+        int h = groupId.hashCode();
+        h = 31 * h + artifactId.hashCode();
+        h = 31 * h + version.hashCode();
+        h = 31 * h + kind.hashCode();
+        h = 31 * h + Objects.hashCode(this.classifier);
+        h = 31 * h + this.exclusions.hashCode();
+        // spread the bits (murmur3's finalizer), as hash maps only look at the low bits
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        this.hash = h;
+    }
+
+    /** Returns a copy of this coord with the specified exclusions. */
+    public Coord withExclusions (Collection<Exclusion> exclusions) {
+        return new Coord(groupId, artifactId, version, kind, classifier, exclusions);
+    }
+
+    /**
+     * Returns the canonical coord equal to this one: the first such coord to be interned, as long
+     * as it remains reachable. Interning the coords of large graphs avoids retaining many copies
+     * of the same coord (and its strings).
+     */
+    public Coord intern () {
+        synchronized (interned) {
+            WeakReference<Coord> ref = interned.get(this);
+            Coord canon = (ref == null) ? null : ref.get();
+            if (canon != null) return canon;
+            interned.put(this, new WeakReference<Coord>(this));
+            return this;
+        }
     }
 
     @Override public String toString () {
@@ -26,16 +156,16 @@ public class Coord {
     }
 
     @Override public int hashCode () {
-      return groupId.hashCode() ^ artifactId.hashCode() ^ version.hashCode() ^ kind.hashCode() ^
-          (classifier == null ? 0 : classifier.hashCode());
+        return hash;
     }
 
     @Override public boolean equals (Object other) {
+        if (other == this) return true;
         if (!(other instanceof Coord)) return false;
         Coord oc = (Coord)other;
-        return oc.groupId.equals(groupId) && oc.artifactId.equals(artifactId) &&
-            oc.version.equals(version) && oc.kind.equals(kind) &&
-            Objects.equals(oc.classifier, classifier) &&
-            Objects.equals(oc.exclusions, exclusions);
+        return oc.hash == hash && oc.groupId.equals(groupId) &&
+            oc.artifactId.equals(artifactId) && oc.version.equals(version) &&
+            oc.kind.equals(kind) && Objects.equals(oc.classifier, classifier) &&
+            oc.exclusions.equals(exclusions);
     }
 }
@@ -1,76 +1,177 @@
 package mfetcher;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
 import org.apache.maven.settings.Settings;
+import org.eclipse.aether.AbstractRepositoryListener;
 import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryCache;
 import org.eclipse.aether.RepositoryEvent;
-import org.eclipse.aether.RepositoryListener;
+import org.eclipse.aether.RepositoryException;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SyncContext;
+import org.eclipse.aether.RequestTrace;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
 import org.eclipse.aether.graph.Exclusion;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.Proxy;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.ArtifactDescriptorException;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.resolution.DependencyRequest;
 import org.eclipse.aether.resolution.DependencyResolutionException;
 import org.eclipse.aether.resolution.DependencyResult;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
 
+/**
+ * Resolves Maven artifacts and their transitive dependencies. A dependency manager may be used
+ * concurrently from any number of threads: concurrent resolutions which need the same artifact or
+ * POM share a single fetch of it, rather than contending for the local repository's file locks.
+ */
 public class DependencyManager {
 
+    /** How a manager checks remote repositories for changes to what it has already fetched. */
+    public enum Refresh {
+        /** Never check: whatever is in the local repository is used as is. */
+        NEVER,
+        /**
+         * Check only what may change without its version changing: snapshots, version ranges and
+         * the repository metadata that resolves them (and artifacts that were missing). Each is
+         * checked at most every {@code mfetcher.refresh.interval} minutes (default 0, every time),
+         * tracked per repository, and metadata is fetched with conditional requests, so metadata
+         * which has not changed costs only a {@code 304 Not Modified}.
+         */
+        SMART,
+        /** Check everything, bypassing all caches. */
+        ALWAYS
+    }
+
+    /** Receives artifacts as they are resolved by {@link #resolveStreaming(List,Receiver)}. */
+    public interface Receiver {
+        /**
+         * Called when the artifact identified by {@code coord} is available in the local
+         * repository at {@code path}. {@code path} is null if the artifact could not be resolved.
+         * This may be called concurrently from multiple threads.
+         */
+        void received (Coord coord, Path path);
+    }
+
     private static final String MAVEN_CENTRAL_URL = "https://repo1.maven.org/maven2/";
     private static final String PROP_CONNECT_TIMEOUT = "mfetcher.connect.timeout";
     private static final String PROP_REQUEST_TIMEOUT = "mfetcher.request.timeout";
     private static final String PROP_LOG = "mfetcher.log";
+    private static final String PROP_RESULT_CACHE = "mfetcher.result.cache";
+    private static final String PROP_MISSING_TTL = "mfetcher.missing.ttl";
+    private static final String PROP_DOWNLOAD_THREADS = "mfetcher.download.threads";
+    private static final String PROP_REFRESH_INTERVAL = "mfetcher.refresh.interval";
+    private static final String PROP_LEAN = "mfetcher.lean";
 
     private static final String propLog = System.getProperty(PROP_LOG, "quiet");
     private static final boolean debug = propLog.equals("debug");
-    private static final boolean verbose = debug || propLog.equals("verbose");
+    static final boolean verbose = debug || propLog.equals("verbose");
 
+    private final Refresh refresh;
     private final boolean forceRefresh;
     private final boolean offline;
     private final RepositorySystem system;
     private final MavenSettings settings;
     private final RepositorySystemSession session;
     private final List<RemoteRepository> repos;
+    private final ResultCache resultCache;
+    private final AccessLog accessLog;
+    private final ConcurrentMap<String,List<String>> routes =
+        new ConcurrentSkipListMap<String,List<String>>();
+    private final ConcurrentMap<String,CompletableFuture<Map<Coord,Path>>> inFlight =
+        new ConcurrentHashMap<String,CompletableFuture<Map<Coord,Path>>>();
+    private volatile Executor executor = DEFAULT_EXECUTOR;
 
+    /**
+     * Creates a manager which resolves into the local repository at {@code localRepoPath} from the
+     * remote repositories {@code repos} (Maven Central if null). {@code forceRefresh} selects
+     * {@link Refresh#ALWAYS} rather than {@link Refresh#NEVER}.
+     */
     public DependencyManager (Path localRepoPath, List<String> repos,
                               boolean forceRefresh, boolean offline) {
-        this.forceRefresh = forceRefresh;
+        this(localRepoPath, repos, forceRefresh ? Refresh.ALWAYS : Refresh.NEVER, offline);
+    }
+
+    /**
+     * Creates a manager which resolves into the local repository at {@code localRepoPath} from the
+     * remote repositories {@code repos} (Maven Central if null), checking them for changes as
+     * {@code refresh} directs.
+     */
+    public DependencyManager (Path localRepoPath, List<String> repos,
+                              Refresh refresh, boolean offline) {
+        this.refresh = refresh;
+        this.forceRefresh = (refresh == Refresh.ALWAYS);
         this.offline = offline;
-        this.system = newRepositorySystem();
-        this.settings = new MavenSettings();
+        this.system = sharedRepositorySystem();
+        this.settings = MavenSettings.shared();
         this.session = newRepositorySession(system, localRepoPath);
 
+        // a smart refresh leaves the session's update policy unset, so these apply
+        long interval = Long.getLong(PROP_REFRESH_INTERVAL, 0);
         final RepositoryPolicy policy = new RepositoryPolicy(
-            true, RepositoryPolicy.UPDATE_POLICY_NEVER, RepositoryPolicy.CHECKSUM_POLICY_WARN);
+            true, refresh != Refresh.SMART ? RepositoryPolicy.UPDATE_POLICY_NEVER :
+            interval > 0 ? RepositoryPolicy.UPDATE_POLICY_INTERVAL + ":" + interval :
+            RepositoryPolicy.UPDATE_POLICY_ALWAYS, RepositoryPolicy.CHECKSUM_POLICY_WARN);
         this.repos = new ArrayList<RemoteRepository>();
         if (repos == null) repos = Arrays.asList("central");
         for (String repo : repos) {
-            if ("central".equals(repo)) this.repos.add(
-                newRemoteRepository("central", MAVEN_CENTRAL_URL, policy));
-            else this.repos.add(newRemoteRepository(null, repo, policy));
+            this.repos.add(newRemoteRepository("central".equals(repo) ? "central" : null,
+                                               toRepoUrl(repo), policy));
         }
+        this.resultCache = Boolean.parseBoolean(System.getProperty(PROP_RESULT_CACHE, "true")) ?
+            new ResultCache(localRepoPath) : null;
+        this.accessLog = AccessLog.forRepo(localRepoPath);
     }
 
     /**
@@ -81,30 +182,660 @@ public class DependencyManager {
      * in {@code coords} and their transitive dependencies. Any coords which were unable to be
      * resolved will be mapped to {@code null}. The returned map will iterate in the order the
      * dependencies were returned from Maven.
+     *
+     * <p>Successful resolutions are cached in the local repository (unless the
+     * {@code mfetcher.result.cache} system property is {@code false}), so resolving the same coords
+     * again returns without consulting Maven at all, as long as the artifacts are all still present
+     * and none of the POMs involved have changed. {@link Refresh#ALWAYS} bypasses the cache.
+     * (Resolutions involving snapshots or version ranges are never cached, so
+     * {@link Refresh#SMART} can safely use it.)</p>
      */
     public Map<Coord,Path> resolveDependencies (List<Coord> coords) {
+        return resolveDependencies(coords, null);
+    }
+
+    /**
+     * Resolves {@code coords} and their transitive dependencies, exactly as
+     * {@link #resolveDependencies(List)} does, and records metrics for the resolution in
+     * {@code stats} (which may be null).
+     */
+    public Map<Coord,Path> resolveDependencies (List<Coord> coords, ResolutionStats stats) {
+        String cacheKey = null;
+        if (resultCache != null) {
+            cacheKey = ResultCache.key(coords, repoUrls());
+            if (!forceRefresh) {
+                Map<Coord,Path> cached = resultCache.load(cacheKey);
+                if (cached != null) {
+                    if (stats != null) stats.cacheHit();
+                    accessLog.accessed(cached.values());
+                    return cached;
+                }
+            }
+        }
+
+        // collect and resolve separately (rather than via system.resolveDependencies) so that we
+        // can time each phase
+        Tracker tracker = new Tracker(stats);
+        RequestTrace trace = RequestTrace.newChild(null, tracker);
         CollectRequest req = new CollectRequest((Dependency)null, toDependencies(coords), repos);
+        req.setTrace(trace);
+        long start = System.nanoTime();
+        CollectResult cresult;
+        try {
+            cresult = system.collectDependencies(session, req);
+        } catch (DependencyCollectionException e) {
+            cresult = e.getResult();
+        }
+        long collected = System.nanoTime();
+        if (stats != null) stats.collected(collected - start);
 
+        DependencyRequest dreq = new DependencyRequest(cresult.getRoot(), null);
+        dreq.setTrace(trace);
         DependencyResult result;
         try {
-            result = system.resolveDependencies(session, new DependencyRequest(req, null));
+            result = system.resolveDependencies(session, dreq);
         } catch (DependencyResolutionException e) {
             result = e.getResult();
         }
+        if (stats != null) stats.resolved(System.nanoTime() - collected);
 
-        List<ArtifactResult> artifactResults = result.getArtifactResults();
+        // a cached result depends on the POMs of the whole graph, not just those read just now
+        List<Path> poms = (cacheKey == null) ? null : resultPoms(tracker, result.getRoot());
         Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
-        for (ArtifactResult artifactResult : artifactResults) {
-            // if this artifact result is a conflict loser, omit it
+        for (ArtifactResult artifactResult : result.getArtifactResults()) {
+            // if this artifact result is a conflict loser (in a verbose graph), omit it
             if (artifactResult.getRequest().getDependencyNode().getData().get(
                 ConflictResolver.NODE_DATA_WINNER) != null) continue;
-            Artifact art = artifactResult.getArtifact();
-            if (art == null) jars.put(toCoord(artifactResult.getRequest().getArtifact()), null);
-            else jars.put(toCoord(art), art.getFile().toPath().toAbsolutePath());
+            addResult(jars, artifactResult);
         }
+
+        if (cacheKey != null) cacheResult(cacheKey, coords, jars, poms);
+        // note the POMs as well as the jars
+        accessLog.accessed(tracker.paths());
         return jars;
     }
 
+    /**
+     * Resolves {@code coords} and their transitive dependencies, like
+     * {@link #resolveDependencies(List)}, but hands each artifact to {@code receiver} as soon as
+     * it is available in the local repository, rather than waiting until every artifact has been
+     * downloaded. Conflict losers are omitted as usual. Artifacts are downloaded in parallel on
+     * this manager's executor (see {@link #setExecutor}), at most {@code mfetcher.download.threads}
+     * (default 5) at a time, so they will be received in no particular order.
+     *
+     * @return the same mapping that {@link #resolveDependencies(List)} would return, once all
+     * artifacts have been received.
+     */
+    public Map<Coord,Path> resolveStreaming (List<Coord> coords, final Receiver receiver) {
+        String cacheKey = null;
+        if (resultCache != null) {
+            cacheKey = ResultCache.key(coords, repoUrls());
+            Map<Coord,Path> cached = forceRefresh ? null : resultCache.load(cacheKey);
+            if (cached != null) {
+                for (Map.Entry<Coord,Path> entry : cached.entrySet()) {
+                    receiver.received(entry.getKey(), entry.getValue());
+                }
+                accessLog.accessed(cached.values());
+                return cached;
+            }
+        }
+
+        // collect the graph, the winners of which are the artifacts we need
+        Tracker poms = new Tracker(null);
+        final RequestTrace trace = RequestTrace.newChild(null, poms);
+        CollectRequest req = new CollectRequest((Dependency)null, toDependencies(coords), repos);
+        req.setTrace(trace);
+        CollectResult cresult;
+        try {
+            cresult = system.collectDependencies(session, req);
+        } catch (DependencyCollectionException e) {
+            cresult = e.getResult();
+        }
+
+        // resolve each artifact separately so that we can pass it on the moment it lands
+        // (but no more at once than the connector would download, lest a large graph flood the
+        // executor with threads)
+        List<DependencyNode> winners = Graphs.winners(cresult.getRoot());
+        Map<String,CompletableFuture<ArtifactResult>> resolves =
+            new LinkedHashMap<String,CompletableFuture<ArtifactResult>>();
+        final Semaphore slots = new Semaphore(Integer.getInteger(PROP_DOWNLOAD_THREADS, 5));
+        for (final DependencyNode node : winners) {
+            String key = requestKey(node);
+            if (resolves.containsKey(key)) continue;
+            final CompletableFuture<ArtifactResult> resolve = new CompletableFuture<ArtifactResult>();
+            resolves.put(key, resolve);
+            slots.acquireUninterruptibly();
+            try {
+                executor.execute(new Runnable() {
+                    public void run () {
+                        try {
+                            ArtifactRequest areq = new ArtifactRequest(node);
+                            areq.setTrace(trace);
+                            ArtifactResult result;
+                            try {
+                                result = system.resolveArtifact(session, areq);
+                            } catch (ArtifactResolutionException e) {
+                                result = e.getResults().get(0);
+                            }
+                            receiver.received(resultCoord(result), resultPath(result));
+                            resolve.complete(result);
+                        } catch (Throwable t) {
+                            resolve.completeExceptionally(t);
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                slots.release(); // rejected
+                throw e;
+            }
+        }
+
+        Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
+        for (DependencyNode node : winners) {
+            try {
+                addResult(jars, resolves.get(requestKey(node)).join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+                if (cause instanceof Error) throw (Error)cause;
+                throw e;
+            }
+        }
+
+        if (cacheKey != null) {
+            cacheResult(cacheKey, coords, jars, resultPoms(poms, cresult.getRoot()));
+        }
+        accessLog.accessed(poms.paths());
+        return jars;
+    }
+
+    /**
+     * Resolves multiple independent sets of root coords (for example, those of many separately
+     * deployed apps) in a single pass. The union of their dependency graphs is collected once, and
+     * any artifact needed by more than one root set is resolved once, but conflict resolution is
+     * performed separately for each root set, so each result is the same as would be obtained by
+     * calling {@link #resolveDependencies(List)} for that root set alone.
+     *
+     * @param roots a mapping from an arbitrary name to a list of root coords.
+     * @return a mapping from each name in {@code roots} to the resolution of its coords, as
+     * described in {@link #resolveDependencies(List)}.
+     */
+    public Map<String,Map<Coord,Path>> resolveBatch (Map<String,List<Coord>> roots) {
+        Map<String,Map<Coord,Path>> results = new LinkedHashMap<String,Map<Coord,Path>>();
+        Map<String,String> cacheKeys = new HashMap<String,String>();
+        // note the root sets whose results are already cached, and dedupe the remainder's coords
+        Map<Coord,Dependency> direct = new LinkedHashMap<Coord,Dependency>();
+        for (Map.Entry<String,List<Coord>> entry : roots.entrySet()) {
+            results.put(entry.getKey(), null);
+            if (resultCache != null) {
+                String cacheKey = ResultCache.key(entry.getValue(), repoUrls());
+                Map<Coord,Path> cached = forceRefresh ? null : resultCache.load(cacheKey);
+                if (cached != null) {
+                    results.put(entry.getKey(), cached);
+                    accessLog.accessed(cached.values());
+                    continue;
+                }
+                cacheKeys.put(entry.getKey(), cacheKey);
+            }
+            for (Coord coord : entry.getValue()) {
+                if (!direct.containsKey(coord)) direct.put(coord, toDependency(coord));
+            }
+        }
+        if (direct.isEmpty()) return results;
+
+        // collect the union of the graphs without conflict resolution
+        Tracker poms = new Tracker(null);
+        RequestTrace trace = RequestTrace.newChild(null, poms);
+        Map<Dependency,List<DependencyNode>> nodes = collectRaw(direct.values(), trace);
+
+        // resolve conflicts separately for each root set, from a private copy of the raw graph
+        Map<String,DependencyNode> graphs = new HashMap<String,DependencyNode>();
+        Map<String,ArtifactRequest> requests = new LinkedHashMap<String,ArtifactRequest>();
+        for (Map.Entry<String,List<Coord>> entry : roots.entrySet()) {
+            if (results.get(entry.getKey()) != null) continue;
+            List<DependencyNode> children = new ArrayList<DependencyNode>();
+            for (Coord coord : entry.getValue()) children.addAll(nodes.get(direct.get(coord)));
+            DependencyNode root = Graphs.copyRoot(children);
+            try {
+                root = Graphs.transform(session, root);
+            } catch (RepositoryException e) {
+                if (verbose) System.out.println("Conflict resolution failed for " +
+                                                entry.getKey() + ": " + e);
+            }
+            graphs.put(entry.getKey(), root);
+            for (DependencyNode node : Graphs.winners(root)) {
+                String key = requestKey(node);
+                if (!requests.containsKey(key)) {
+                    ArtifactRequest areq = new ArtifactRequest(node);
+                    areq.setTrace(trace);
+                    requests.put(key, areq);
+                }
+            }
+        }
+
+        // resolve every needed artifact in one go
+        List<ArtifactResult> aresults;
+        try {
+            aresults = system.resolveArtifacts(session, requests.values());
+        } catch (ArtifactResolutionException e) {
+            aresults = e.getResults();
+        }
+        Map<String,ArtifactResult> byKey = new HashMap<String,ArtifactResult>();
+        for (ArtifactResult aresult : aresults) {
+            byKey.put(requestKey(aresult.getRequest().getDependencyNode()), aresult);
+        }
+
+        for (Map.Entry<String,DependencyNode> entry : graphs.entrySet()) {
+            Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
+            for (DependencyNode node : Graphs.winners(entry.getValue())) {
+                addResult(jars, byKey.get(requestKey(node)));
+            }
+            results.put(entry.getKey(), jars);
+            String cacheKey = cacheKeys.get(entry.getKey());
+            if (cacheKey != null) {
+                cacheResult(cacheKey, roots.get(entry.getKey()), jars,
+                            resultPoms(poms, entry.getValue()));
+            }
+        }
+        accessLog.accessed(poms.paths());
+        return results;
+    }
+
+    /**
+     * Resolves {@code coords} and their transitive dependencies, like
+     * {@link #resolveDependencies(List)}, but retains the dependency graph of each coord, so that
+     * the resolution can later be updated with {@link #update} at a cost proportional to the
+     * change rather than to the whole graph. The result cache is not consulted.
+     */
+    public Resolution resolveGraph (List<Coord> coords) {
+        return update(null, coords, Collections.<Coord>emptyList());
+    }
+
+    /**
+     * Updates {@code previous} (a resolution made by this manager) to reflect the addition of
+     * {@code added} to, and removal of {@code removed} from, its roots. Only the graphs of the
+     * added roots are collected; those of the remaining roots are reused. Conflicts are then
+     * resolved anew (in memory), and only winning artifacts which were not already resolved by
+     * {@code previous} are resolved. The result is the same as that of resolving the updated
+     * roots from scratch.
+     *
+     * @param previous the resolution to update, or null to resolve {@code added} from scratch.
+     */
+    public Resolution update (Resolution previous, Collection<Coord> added,
+                              Collection<Coord> removed) {
+        List<String> repoUrls = repoUrls();
+        if (previous != null && !previous.repos.equals(repoUrls)) throw new IllegalArgumentException(
+            "Resolution was made against different repositories: " + previous.repos);
+
+        List<Coord> roots = new ArrayList<Coord>();
+        if (previous != null) roots.addAll(previous.roots);
+        roots.removeAll(removed);
+        for (Coord coord : added) if (!roots.contains(coord)) roots.add(coord);
+
+        // reuse the graphs we already have, collect those we don't
+        Map<Coord,List<DependencyNode>> graphs = new HashMap<Coord,List<DependencyNode>>();
+        Map<Coord,Dependency> fresh = new LinkedHashMap<Coord,Dependency>();
+        for (Coord root : roots) {
+            List<DependencyNode> graph = (previous == null) ? null : previous.graphs.get(root);
+            if (graph != null) graphs.put(root, graph);
+            else fresh.put(root, toDependency(root));
+        }
+        RequestTrace trace = RequestTrace.newChild(null, new Tracker(null));
+        if (!fresh.isEmpty()) {
+            Map<Dependency,List<DependencyNode>> nodes = collectRaw(fresh.values(), trace);
+            for (Map.Entry<Coord,Dependency> entry : fresh.entrySet()) {
+                graphs.put(entry.getKey(), nodes.get(entry.getValue()));
+            }
+        }
+
+        // resolve conflicts over the whole graph: it's all in memory so this is cheap, and an
+        // edit anywhere can change the winner of a conflict anywhere else
+        List<DependencyNode> children = new ArrayList<DependencyNode>();
+        for (Coord root : roots) children.addAll(graphs.get(root));
+        DependencyNode root = Graphs.copyRoot(children);
+        try {
+            root = Graphs.transform(session, root);
+        } catch (RepositoryException e) {
+            if (verbose) System.out.println("Conflict resolution failed for " + roots + ": " + e);
+        }
+
+        // resolve the winners that we haven't already resolved
+        List<DependencyNode> winners = Graphs.winners(root);
+        Map<String,ArtifactResult> results = new HashMap<String,ArtifactResult>();
+        Map<String,ArtifactRequest> requests = new LinkedHashMap<String,ArtifactRequest>();
+        for (DependencyNode node : winners) {
+            String key = requestKey(node);
+            ArtifactResult prev = (previous == null) ? null : previous.results.get(key);
+            if (prev != null && prev.isResolved() && prev.getArtifact().getFile().exists()) {
+                results.put(key, prev);
+            } else if (!requests.containsKey(key)) {
+                ArtifactRequest areq = new ArtifactRequest(node);
+                areq.setTrace(trace);
+                requests.put(key, areq);
+            }
+        }
+        if (!requests.isEmpty()) {
+            List<ArtifactResult> aresults;
+            try {
+                aresults = system.resolveArtifacts(session, requests.values());
+            } catch (ArtifactResolutionException e) {
+                aresults = e.getResults();
+            }
+            for (ArtifactResult aresult : aresults) {
+                results.put(requestKey(aresult.getRequest().getDependencyNode()), aresult);
+            }
+        }
+
+        Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
+        for (DependencyNode node : winners) addResult(jars, results.get(requestKey(node)));
+        accessLog.accessed(jars.values());
+        return new Resolution(roots, jars, repoUrls, graphs, results);
+    }
+
+    /**
+     * Resolves {@code coords} and their transitive dependencies on this manager's executor. See
+     * {@link #resolveDependencies} for details. If a resolution of the same coords is already in
+     * progress, the returned future will complete with its result rather than starting another.
+     */
+    public CompletableFuture<Map<Coord,Path>> resolveDependenciesAsync (final List<Coord> coords) {
+        final String key = ResultCache.key(coords, repoUrls());
+        CompletableFuture<Map<Coord,Path>> result = new CompletableFuture<Map<Coord,Path>>();
+        CompletableFuture<Map<Coord,Path>> active = inFlight.putIfAbsent(key, result);
+        if (active != null) return active;
+
+        final CompletableFuture<Map<Coord,Path>> fresult = result;
+        try {
+            executor.execute(new Runnable() {
+                public void run () {
+                    try {
+                        fresult.complete(resolveDependencies(coords));
+                    } catch (Throwable t) {
+                        fresult.completeExceptionally(t);
+                    } finally {
+                        inFlight.remove(key, fresult);
+                    }
+                }
+            });
+        } catch (RuntimeException e) { // executor rejected the task
+            inFlight.remove(key, result);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Resolves {@code coords} from the local repository alone, without waiting on any remote
+     * repository, and revalidates that resolution online in the background (on this manager's
+     * executor), fetching anything new into the local repository so that the next resolution sees
+     * it. This is meant for application startup, which should not block on the network: start with
+     * {@link Revalidation#artifacts} and consult {@link Revalidation#changed} to learn whether the
+     * next start would get a different classpath. Use {@link Refresh#SMART} to revalidate snapshots
+     * and version ranges.
+     *
+     * <p>If the local repository cannot satisfy every artifact, {@code coords} are resolved online
+     * (blocking) instead, and the revalidation is already complete.</p>
+     */
+    public Revalidation resolveDependenciesStale (List<Coord> coords) {
+        if (!offline) {
+            DependencyManager local = offlineManager();
+            local.routes.putAll(routes);
+            Map<Coord,Path> jars = local.resolveDependencies(coords);
+            if (isComplete(coords, jars)) {
+                return new Revalidation(jars, true, resolveDependenciesAsync(coords));
+            }
+        }
+        Map<Coord,Path> jars = resolveDependencies(coords);
+        return new Revalidation(jars, false, CompletableFuture.completedFuture(jars));
+    }
+
+    /**
+     * Verifies the artifacts of a resolution (as returned by {@link #resolveDependencies}) against
+     * the SHA-1 checksums downloaded with them, as described by {@link Verifier}. Artifacts which
+     * are corrupt are deleted and (unless we are offline) downloaded again.
+     */
+    public Verifier.Report verify (Map<Coord,Path> artifacts) {
+        Map<Path,Coord> coords = new LinkedHashMap<Path,Coord>();
+        for (Map.Entry<Coord,Path> entry : artifacts.entrySet()) {
+            if (entry.getValue() != null) coords.put(entry.getValue(), entry.getKey());
+        }
+        Verifier verifier = Verifier.forRepo(localRepo());
+        Verifier.Report report = verifier.verify(coords.keySet(), false);
+        refetch(verifier, report, coords);
+        return report;
+    }
+
+    /**
+     * Verifies every artifact in the local repository, like {@link #verify(Map)}. Artifacts which
+     * have not changed since they were last verified are not hashed again, unless {@code rehash}
+     * (which is needed to find damage that changed neither size nor modification time). Corrupt
+     * artifacts whose coords can be derived from their paths are downloaded again, others are
+     * simply deleted (to be downloaded by the next resolution that needs them).
+     */
+    public Verifier.Report verifyLocalRepository (boolean rehash) {
+        Verifier verifier = Verifier.forRepo(localRepo());
+        Verifier.Report report;
+        try {
+            report = verifier.verify(verifier.artifacts(), rehash);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list " + localRepo(), e);
+        }
+        Map<Path,Coord> coords = new HashMap<Path,Coord>();
+        for (Path file : report.corrupt) {
+            Coord coord = Verifier.coordOf(localRepo(), file);
+            if (coord != null) coords.put(file, coord);
+        }
+        refetch(verifier, report, coords);
+        return report;
+    }
+
+    /** Deletes the corrupt files of {@code report} and downloads those in {@code coords} again,
+      * noting in the report those that arrive intact. This holds the locks that resolution takes,
+      * so a concurrent resolution will not see a file missing or half replaced. */
+    private void refetch (Verifier verifier, Verifier.Report report, Map<Path,Coord> coords) {
+        if (report.corrupt.isEmpty()) return;
+        List<Artifact> versions = new ArrayList<Artifact>();
+        for (Path file : report.corrupt) {
+            Artifact version = versionOf(file.getParent());
+            if (version != null) versions.add(version);
+        }
+        List<Path> fetched = new ArrayList<Path>();
+        SyncContext sync = lock(versions);
+        try {
+            List<ArtifactRequest> reqs = new ArrayList<ArtifactRequest>();
+            for (Path file : report.corrupt) {
+                try {
+                    // the checksum may be what is damaged, so fetch that again too
+                    Files.deleteIfExists(file);
+                    Files.deleteIfExists(Verifier.checksumFile(file));
+                } catch (IOException e) {
+                    if (verbose) System.out.println("Failed to delete " + file + ": " + e);
+                    continue;
+                }
+                Coord coord = coords.get(file);
+                if (coord != null && !offline) {
+                    reqs.add(new ArtifactRequest(toArtifact(coord), repos, null));
+                }
+            }
+            if (reqs.isEmpty()) return;
+
+            List<ArtifactResult> results;
+            try {
+                results = system.resolveArtifacts(session, reqs);
+            } catch (ArtifactResolutionException e) {
+                results = e.getResults();
+            }
+            for (ArtifactResult result : results) {
+                Path path = resultPath(result);
+                if (path != null) fetched.add(path);
+            }
+        } finally {
+            sync.close();
+        }
+        report.refetched.addAll(verifier.verify(fetched, true).verified);
+    }
+
+    /**
+     * Evicts the least recently used artifact versions (each a version directory, holding the
+     * artifact's jar, POM, checksums and so on) from the local repository, until the versions that
+     * remain total no more than {@code maxBytes}. Use is noted whenever this or any other manager
+     * resolves an artifact, or returns a cached resolution that includes it; versions that have
+     * never been noted are judged by their modification time. Each version is evicted while
+     * holding the same locks that resolution takes, so a concurrent resolution (in this process or
+     * another) will not see it half deleted; it will simply download it again.
+     *
+     * @return the version directories that were evicted, least recently used first.
+     */
+    public List<Path> compactLocalRepository (long maxBytes) {
+        List<AccessLog.Version> versions;
+        try {
+            versions = accessLog.versions();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list " + localRepo(), e);
+        }
+        long total = 0;
+        for (AccessLog.Version version : versions) total += version.size;
+
+        List<Path> evicted = new ArrayList<Path>();
+        for (AccessLog.Version version : versions) {
+            if (total <= maxBytes) break;
+            if (evict(version)) {
+                total -= version.size;
+                evicted.add(version.dir);
+            }
+        }
+        if (verbose) System.out.println("Evicted " + evicted.size() + " of " + versions.size() +
+                                        " versions, " + total + " bytes remain");
+        return evicted;
+    }
+
+    /** Deletes the files of {@code version}, unless it has been used since it was listed. */
+    protected boolean evict (AccessLog.Version version) {
+        SyncContext sync = lock(Collections.<Artifact>singletonList(new DefaultArtifact(
+            version.groupId, version.artifactId, "pom", version.version)));
+        try {
+            if (accessLog.usedSince(version.dir, version.lastAccess)) return false;
+            List<Path> files = new ArrayList<Path>();
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(version.dir)) {
+                for (Path file : dir) if (Files.isRegularFile(file)) files.add(file);
+            }
+            for (Path file : files) {
+                io.takari.filemanager.Lock lock = takariFileManager.writeLock(file.toFile());
+                lock.lock();
+                try {
+                    Files.deleteIfExists(file);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            try {
+                Files.deleteIfExists(version.dir);
+            } catch (DirectoryNotEmptyException e) {
+                // something else lives there too, leave it be
+            }
+            accessLog.evicted(version.dir);
+            return true;
+        } catch (IOException e) {
+            if (verbose) System.out.println("Failed to evict " + version + ": " + e);
+            return false;
+        } finally {
+            sync.close();
+        }
+    }
+
+    /** Takes the locks that resolution takes for {@code versions}. The sync context locks by
+      * group, artifact and version, so any artifact of a version will do. */
+    private SyncContext lock (Collection<Artifact> versions) {
+        SyncContext sync = system.newSyncContext(session, false);
+        try {
+            sync.acquire(versions, null);
+        } catch (RuntimeException e) {
+            sync.close();
+            throw e;
+        }
+        return sync;
+    }
+
+    /** Returns an artifact of the version whose directory in our local repository is {@code dir},
+      * or null if {@code dir} is not a version directory. */
+    private Artifact versionOf (Path dir) {
+        Path rel = localRepo().toAbsolutePath().normalize().relativize(
+            dir.toAbsolutePath().normalize());
+        int count = rel.getNameCount();
+        if (count < 3 || rel.startsWith("..")) return null;
+        StringBuilder groupId = new StringBuilder();
+        for (int ii = 0; ii < count-2; ii++) {
+            if (ii > 0) groupId.append('.');
+            groupId.append(rel.getName(ii));
+        }
+        return new DefaultArtifact(groupId.toString(), rel.getName(count-2).toString(), "pom",
+                                   rel.getName(count-1).toString());
+    }
+
+    private Path localRepo () {
+        return session.getLocalRepository().getBasedir().toPath();
+    }
+
+    /**
+     * Configures the executor on which {@link #resolveDependenciesAsync} performs resolutions. By
+     * default a shared pool of daemon threads is used. Resolution blocks on disk and network IO, so
+     * an executor with plenty of threads (or one that runs tasks on virtual threads) is advisable.
+     */
+    public void setExecutor (Executor executor) {
+        if (executor == null) throw new NullPointerException("executor");
+        this.executor = executor;
+    }
+
+    /** Returns true if {@code jars} resolves every one of {@code coords} and all of their
+      * dependencies. (A root whose version could not be resolved is simply absent.) */
+    private static boolean isComplete (List<Coord> coords, Map<Coord,Path> jars) {
+        if (jars.containsValue(null)) return false;
+        Set<String> ids = new HashSet<String>();
+        for (Coord coord : jars.keySet()) ids.add(coord.groupId + ":" + coord.artifactId);
+        for (Coord coord : coords) {
+            if (!ids.contains(coord.groupId + ":" + coord.artifactId)) return false;
+        }
+        return true;
+    }
+
+    /** Returns a manager like this one, but offline. */
+    private synchronized DependencyManager offlineManager () {
+        if (offlineManager == null) {
+            offlineManager = new DependencyManager(
+                localRepo(), Collections.<String>emptyList(), Refresh.NEVER, true);
+            // use our very repositories: the local repository only deems an artifact available
+            // if it was fetched from a repository with the same id, and mirrors match by id too
+            offlineManager.repos.addAll(repos);
+        }
+        return offlineManager;
+    }
+    private DependencyManager offlineManager;
+
+    /**
+     * Restricts artifacts whose group id starts with {@code groupPrefix} to be fetched only from
+     * {@code repos} (which are specified as they are to the constructor, and should be among the
+     * repositories supplied to it). A prefix of {@code com.ourcorp} (or {@code com.ourcorp.*})
+     * matches {@code com.ourcorp} and {@code com.ourcorp.foo}, but not {@code com.ourcorporate}.
+     * When multiple prefixes match, the longest wins. The prefix {@code *} matches any group not
+     * matched by another prefix. Groups which match no route may be fetched from any repository.
+     */
+    public void addRoute (String groupPrefix, String... repos) {
+        String prefix = groupPrefix;
+        if (prefix.endsWith(".*")) prefix = prefix.substring(0, prefix.length() - 2);
+        List<String> urls = new ArrayList<String>();
+        for (String repo : repos) urls.add(toRepoUrl(repo));
+        routes.put(prefix, Collections.unmodifiableList(urls));
+    }
+
+    /**
+     * Returns the process-wide cache of artifact descriptors shared by all dependency managers.
+     * Its hit and miss counts reveal how much POM reading is being avoided.
+     */
+    public static DescriptorCache descriptorCache () {
+        return DescriptorCache.SHARED;
+    }
+
     protected void onRepositoryEvent (String method, RepositoryEvent event) {
         if (verbose) System.out.println(method + " :: " + event);
     }
@@ -113,6 +844,13 @@ public class DependencyManager {
         if (verbose) System.out.println(method + " :: " + event);
     }
 
+    // the repository system and its components are stateless, so all managers share one
+    private static synchronized RepositorySystem sharedRepositorySystem () {
+        if (sharedSystem == null) sharedSystem = newRepositorySystem();
+        return sharedSystem;
+    }
+    private static RepositorySystem sharedSystem;
+
     private static RepositorySystem newRepositorySystem () {
         // We're using DefaultServiceLocator rather than Guice/Sisu because it's lighter weight.
         // This method pulls together the necessary Aether components and plugins.
@@ -126,11 +864,16 @@ public class DependencyManager {
         });
 
         locator.addService(org.eclipse.aether.spi.connector.RepositoryConnectorFactory.class,
-                           org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory.class);
+                           RoutingConnectorFactory.class);
+        locator.addService(org.eclipse.aether.spi.connector.transport.TransporterFactory.class,
+                           ChunkedTransporterFactory.class);
         locator.addService(org.eclipse.aether.spi.connector.transport.TransporterFactory.class,
-                           org.eclipse.aether.transport.http.HttpTransporterFactory.class);
-        // locator.addService(org.eclipse.aether.spi.connector.transport.TransporterFactory.class,
-        //                    org.eclipse.aether.transport.file.FileTransporterFactory.class);
+                           LinkingTransporterFactory.class);
+
+        locator.setService(org.eclipse.aether.impl.ArtifactDescriptorReader.class,
+                           CachingArtifactDescriptorReader.class);
+        locator.setService(org.eclipse.aether.impl.ArtifactResolver.class,
+                           SharingArtifactResolver.class);
 
         // Takari (support concurrent downloads)
         locator.setService(org.eclipse.aether.impl.SyncContextFactory.class,
@@ -150,35 +893,109 @@ public class DependencyManager {
                             System.getProperty(PROP_CONNECT_TIMEOUT));
         s.setConfigProperty(ConfigurationProperties.REQUEST_TIMEOUT,
                             System.getProperty(PROP_REQUEST_TIMEOUT));
-        s.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true);
+        String threads = System.getProperty(PROP_DOWNLOAD_THREADS);
+        if (threads != null) {
+            s.setConfigProperty("aether.connector.basic.threads", threads);
+            s.setConfigProperty("aether.metadataResolver.threads", threads);
+        }
+        // a verbose graph retains every conflict loser (which are then resolved, only to be
+        // ignored); a lean one prunes them, which callers may opt into
+        boolean lean = Boolean.parseBoolean(System.getProperty(PROP_LEAN, "false"));
+        s.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, !lean);
+        s.setConfigProperty(RoutingConnectorFactory.CONFIG_PROP_ROUTES, routes);
+        long missingTtl = Long.getLong(PROP_MISSING_TTL, 24*60) * 60*1000L;
+        if (missingTtl > 0) {
+            s.setConfigProperty(RoutingConnectorFactory.CONFIG_PROP_MISSING,
+                                MissingCache.forRepo(localRepoPath));
+            s.setConfigProperty(RoutingConnectorFactory.CONFIG_PROP_MISSING_TTL, missingTtl);
+        }
 
+        // keep HTTP connections alive between requests, and share them with other managers
+        s.setCache(new SharedTransportCache());
         s.setOffline(offline);
-        s.setUpdatePolicy(forceRefresh ? RepositoryPolicy.UPDATE_POLICY_ALWAYS :
-            RepositoryPolicy.UPDATE_POLICY_NEVER);
+        s.setUpdatePolicy(refresh == Refresh.ALWAYS ? RepositoryPolicy.UPDATE_POLICY_ALWAYS :
+                          refresh == Refresh.NEVER ? RepositoryPolicy.UPDATE_POLICY_NEVER : null);
 
         s.setLocalRepositoryManager(system.newLocalRepositoryManager(s, localRepo));
         s.setProxySelector(settings.proxySelector);
         s.setMirrorSelector(settings.getMirrorSelector());
         s.setAuthenticationSelector(settings.getAuthSelector());
 
-        s.setTransferListener((TransferListener)java.lang.reflect.Proxy.newProxyInstance(
-            getClass().getClassLoader(),
-            new Class<?>[] { TransferListener.class },
-            new InvocationHandler() {
-                public Object invoke (Object proxy, Method method, Object[] args) {
-                    onTransferEvent(method.getName(), (TransferEvent)args[0]);
-                    return null;
-                }
-            }));
-        s.setRepositoryListener((RepositoryListener)java.lang.reflect.Proxy.newProxyInstance(
-            getClass().getClassLoader(),
-            new Class<?>[] { RepositoryListener.class },
-            new InvocationHandler() {
-                public Object invoke (Object proxy, Method method, Object[] args) {
-                    onRepositoryEvent(method.getName(), (RepositoryEvent)args[0]);
-                    return null;
+        s.setTransferListener(new TransferListener() {
+            public void transferInitiated (TransferEvent event) {
+                onTransferEvent("transferInitiated", event);
+            }
+            public void transferStarted (TransferEvent event) {
+                ResolutionStats stats = Tracker.stats(event.getResource().getTrace());
+                if (stats != null) stats.transferStarted(event.getResource());
+                onTransferEvent("transferStarted", event);
+            }
+            public void transferProgressed (TransferEvent event) {
+                onTransferEvent("transferProgressed", event);
+            }
+            public void transferCorrupted (TransferEvent event) {
+                ResolutionStats stats = Tracker.stats(event.getResource().getTrace());
+                if (stats != null) stats.transferCorrupted();
+                onTransferEvent("transferCorrupted", event);
+            }
+            public void transferSucceeded (TransferEvent event) {
+                TransferResource rsrc = event.getResource();
+                ResolutionStats stats = Tracker.stats(rsrc.getTrace());
+                if (stats != null) stats.transferSucceeded(
+                    rsrc.getRepositoryUrl(), rsrc.getResourceName(), event.getTransferredBytes(),
+                    System.currentTimeMillis() - rsrc.getTransferStartTime());
+                onTransferEvent("transferSucceeded", event);
+            }
+            public void transferFailed (TransferEvent event) {
+                ResolutionStats stats = Tracker.stats(event.getResource().getTrace());
+                if (stats != null) stats.transferFailed();
+                onTransferEvent("transferFailed", event);
+            }
+        });
+        s.setRepositoryListener(new AbstractRepositoryListener() {
+            @Override public void artifactResolved (RepositoryEvent event) {
+                Tracker tracker = Tracker.find(event.getTrace());
+                if (tracker != null) {
+                    tracker.add(event.getFile());
+                    if (tracker.stats != null && event.getFile() != null &&
+                        event.getRepository() instanceof LocalRepository) tracker.stats.localHit();
                 }
-            }));
+                onRepositoryEvent("artifactResolved", event);
+            }
+            @Override public void artifactDownloaded (RepositoryEvent event) {
+                ResolutionStats stats = Tracker.stats(event.getTrace());
+                if (stats != null && event.getException() == null) stats.remoteFetch();
+                onRepositoryEvent("artifactDownloaded", event);
+            }
+            @Override public void artifactDescriptorInvalid (RepositoryEvent event) {
+                onRepositoryEvent("artifactDescriptorInvalid", event);
+            }
+            @Override public void artifactDescriptorMissing (RepositoryEvent event) {
+                onRepositoryEvent("artifactDescriptorMissing", event);
+            }
+            @Override public void metadataInvalid (RepositoryEvent event) {
+                onRepositoryEvent("metadataInvalid", event);
+            }
+            @Override public void artifactResolving (RepositoryEvent event) {
+                onRepositoryEvent("artifactResolving", event);
+            }
+            @Override public void metadataResolving (RepositoryEvent event) {
+                onRepositoryEvent("metadataResolving", event);
+            }
+            @Override public void metadataResolved (RepositoryEvent event) {
+                onRepositoryEvent("metadataResolved", event);
+            }
+            @Override public void artifactDownloading (RepositoryEvent event) {
+                onRepositoryEvent("artifactDownloading", event);
+            }
+            @Override public void metadataDownloading (RepositoryEvent event) {
+                onRepositoryEvent("metadataDownloading", event);
+            }
+            @Override public void metadataDownloaded (RepositoryEvent event) {
+                onRepositoryEvent("metadataDownloaded", event);
+            }
+            // we never install or deploy, so we don't bother relaying those events
+        });
 
         return s;
     }
@@ -194,12 +1011,163 @@ public class DependencyManager {
         return new RemoteRepository.Builder(name, "default", url).setProxy(proxy).setPolicy(policy).build();
     }
 
+    /**
+     * Collects the graphs of {@code deps} without conflict resolution, and returns each
+     * dependency's portion of the graph: the node(s) that the collector created for it.
+     */
+    private Map<Dependency,List<DependencyNode>> collectRaw (
+        Collection<Dependency> deps, RequestTrace trace) {
+        // the collector can only tell us which direct dependency produced a node by its id, so the
+        // direct dependencies are split into layers in which those ids are unique, each collected
+        // separately
+        DefaultRepositorySystemSession raw = new DefaultRepositorySystemSession(session);
+        raw.setDependencyGraphTransformer(null);
+        Map<Dependency,List<DependencyNode>> nodes = new HashMap<Dependency,List<DependencyNode>>();
+        List<Dependency> pending = new ArrayList<Dependency>(deps);
+        while (!pending.isEmpty()) {
+            Map<String,Dependency> layer = new LinkedHashMap<String,Dependency>();
+            List<Dependency> deferred = new ArrayList<Dependency>();
+            for (Dependency dep : pending) {
+                String key = Graphs.directKey(dep.getArtifact());
+                if (layer.containsKey(key)) deferred.add(dep);
+                else layer.put(key, dep);
+            }
+            CollectRequest req = new CollectRequest(
+                (Dependency)null, new ArrayList<Dependency>(layer.values()), repos);
+            req.setTrace(trace);
+            CollectResult cresult;
+            try {
+                cresult = system.collectDependencies(raw, req);
+            } catch (DependencyCollectionException e) {
+                cresult = e.getResult();
+            }
+            for (Dependency dep : layer.values()) nodes.put(dep, new ArrayList<DependencyNode>());
+            for (DependencyNode child : cresult.getRoot().getChildren()) {
+                Dependency dep = layer.get(Graphs.directKey(child));
+                if (dep != null) nodes.get(dep).add(child);
+            }
+            pending = deferred;
+        }
+        return nodes;
+    }
+
+    /** Turns a plain directory path into a {@code file:} URL, leaves URLs alone. */
+    private static String toRepoUrl (String repo) {
+        if ("central".equals(repo)) return MAVEN_CENTRAL_URL;
+        // require a multi-letter scheme so that Windows paths (C:\...) aren't mistaken for URLs
+        if (repo.matches("[A-Za-z][A-Za-z0-9+.-]+:.*")) return repo;
+        return Paths.get(repo).toAbsolutePath().normalize().toUri().toString();
+    }
+
+    /** Returns the POMs on which the result of resolving the graph rooted at {@code root}
+      * depends: those read by {@code poms} and those of every node in the graph. */
+    private List<Path> resultPoms (Tracker poms, DependencyNode root) {
+        // copy the tracker, a batch shares one tracker across all of its root sets
+        Tracker rpoms = new Tracker(null);
+        for (Path pom : poms.paths()) rpoms.paths.add(pom);
+        rpoms.addGraph(session, root);
+        return rpoms.paths();
+    }
+
+    private void cacheResult (String cacheKey, List<Coord> coords, Map<Coord,Path> jars,
+                              List<Path> poms) {
+        if (!ResultCache.isCacheable(coords, jars)) return;
+        try {
+            resultCache.store(cacheKey, jars, poms);
+        } catch (IOException e) {
+            if (verbose) System.out.println("Failed to cache resolution of " + coords + ": " + e);
+        }
+    }
+
+    private static void addResult (Map<Coord,Path> jars, ArtifactResult result) {
+        jars.put(resultCoord(result), resultPath(result));
+    }
+
+    private static Coord resultCoord (ArtifactResult result) {
+        Artifact art = result.getArtifact();
+        return toCoord(art == null ? result.getRequest().getArtifact() : art);
+    }
+
+    private static Path resultPath (ArtifactResult result) {
+        Artifact art = result.getArtifact();
+        return art == null ? null : art.getFile().toPath().toAbsolutePath();
+    }
+
+    private static String requestKey (DependencyNode node) {
+        StringBuilder key = new StringBuilder().append(node.getArtifact());
+        for (RemoteRepository repo : node.getRepositories()) key.append('|').append(repo.getUrl());
+        return key.toString();
+    }
+
+    /** Returns the URLs of our repositories, and our routes, which together (with the coords)
+      * determine the result of a resolution. */
+    private List<String> repoUrls () {
+        List<String> urls = new ArrayList<String>(repos.size());
+        for (RemoteRepository repo : repos) urls.add(repo.getUrl());
+        for (Map.Entry<String,List<String>> route : routes.entrySet()) {
+            urls.add("route " + route.getKey() + " " + route.getValue());
+        }
+        return urls;
+    }
+
+    /** Tracks the POMs read during a resolution, so that a cached result can be invalidated if
+      * any of them changes, and the resolution's stats (if any). Travels with the resolution via
+      * its {@link RequestTrace}, so that events can be attributed to the right resolution. */
+    private static class Tracker {
+        public final ResolutionStats stats;
+        private final Set<Path> paths = Collections.synchronizedSet(new HashSet<Path>());
+
+        public Tracker (ResolutionStats stats) {
+            this.stats = stats;
+        }
+
+        public void add (File file) {
+            if (file != null && file.getName().endsWith(".pom")) {
+                paths.add(file.toPath().toAbsolutePath());
+            }
+        }
+
+        /** Adds the POMs of every node in the graph rooted at {@code root}, to catch POMs whose
+          * descriptors were obtained without being re-read. */
+        public void addGraph (final RepositorySystemSession session, DependencyNode root) {
+            final File basedir = session.getLocalRepository().getBasedir();
+            root.accept(new TreeDependencyVisitor(new DependencyVisitor() {
+                public boolean visitEnter (DependencyNode node) {
+                    Artifact art = node.getArtifact();
+                    if (art != null) add(new File(basedir, session.getLocalRepositoryManager().
+                        getPathForLocalArtifact(new DefaultArtifact(
+                            art.getGroupId(), art.getArtifactId(), "pom", art.getBaseVersion()))));
+                    return true;
+                }
+                public boolean visitLeave (DependencyNode node) {
+                    return true;
+                }
+            }));
+        }
+
+        public List<Path> paths () {
+            synchronized (paths) {
+                return new ArrayList<Path>(paths);
+            }
+        }
+
+        public static Tracker find (RequestTrace trace) {
+            for (; trace != null; trace = trace.getParent()) {
+                if (trace.getData() instanceof Tracker) return (Tracker)trace.getData();
+            }
+            return null;
+        }
+
+        public static ResolutionStats stats (RequestTrace trace) {
+            Tracker tracker = find(trace);
+            return tracker == null ? null : tracker.stats;
+        }
+    }
+
     private static Coord toCoord (Artifact art) {
-      Coord coord = new Coord(art.getGroupId(), art.getArtifactId(),
-                              art.getVersion(), art.getExtension());
-      String cl = art.getClassifier();
-      if (cl != null && cl.length() > 0) coord.classifier = cl;
-      return coord;
+        // intern, as a large graph names the same few artifacts over and over
+        return new Coord(art.getGroupId(), art.getArtifactId(), art.getVersion(),
+                         art.getExtension(), art.getClassifier()).intern();
     }
 
     private static Artifact toArtifact (Coord coord) {
@@ -218,24 +1186,46 @@ public class DependencyManager {
         return deps;
     }
 
-    private static List<Exclusion> getExclusions (String excls) {
-        if (excls == null) return null;
-        final List<String> exclusionPatterns = Arrays.asList(excls.split(","));
-        final List<Exclusion> exclusions = new ArrayList<Exclusion>();
-        for (String ex : exclusionPatterns) {
-            String[] coords = ex.trim().split(":");
-            if (coords.length != 2) throw new IllegalArgumentException(
-                "Illegal exclusion dependency coordinates: " + excls +
-                " (in exclusion " + ex + ")");
-            exclusions.add(new Exclusion(coords[0], coords[1], "*", "*"));
+    private static List<Exclusion> getExclusions (Set<Coord.Exclusion> excls) {
+        if (excls.isEmpty()) return null;
+        final List<Exclusion> exclusions = new ArrayList<Exclusion>(excls.size());
+        for (Coord.Exclusion ex : excls) {
+            exclusions.add(new Exclusion(ex.groupId, ex.artifactId, "*", "*"));
         }
         return exclusions;
     }
 
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+        new ThreadFactory() {
+            public Thread newThread (Runnable task) {
+                Thread thread = new Thread(task, "mfetcher-resolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
     // necessary if we want to forgo Guice/Sisu injection and use DefaultServiceLocator instead
     private static final io.takari.filemanager.FileManager takariFileManager =
         new io.takari.filemanager.internal.DefaultFileManager();
 
+    /**
+     * A session cache that holds only the HTTP transporter's state (chiefly its pool of kept-alive
+     * connections), which it shares between all sessions. Without a cache, the transporter opens
+     * (and handshakes) new connections for every batch of downloads.
+     */
+    private static class SharedTransportCache implements RepositoryCache {
+        private static final String HTTP_STATE = "org.eclipse.aether.transport.http.GlobalState";
+        private static final DefaultRepositoryCache shared = new DefaultRepositoryCache();
+
+        public Object get (RepositorySystemSession session, Object key) {
+            return HTTP_STATE.equals(key) ? shared.get(session, key) : null;
+        }
+
+        public void put (RepositorySystemSession session, Object key, Object data) {
+            if (HTTP_STATE.equals(key)) shared.put(session, key, data);
+        }
+    }
+
     public static class LockingFileProcessor
             extends io.takari.aether.concurrency.LockingFileProcessor {
         public LockingFileProcessor() {
@@ -243,6 +1233,162 @@ public class DependencyManager {
         }
     }
 
+    public static class CachingArtifactDescriptorReader
+            extends org.apache.maven.repository.internal.DefaultArtifactDescriptorReader {
+        @Override public ArtifactDescriptorResult readArtifactDescriptor (
+            RepositorySystemSession session, ArtifactDescriptorRequest request)
+            throws ArtifactDescriptorException {
+            // a forced refresh wants everything re-read, so don't answer from (or pollute) the cache
+            if (RepositoryPolicy.UPDATE_POLICY_ALWAYS.equals(session.getUpdatePolicy())) {
+                return super.readArtifactDescriptor(session, request);
+            }
+
+            Artifact art = request.getArtifact();
+            File basedir = session.getLocalRepository().getBasedir();
+            StringBuilder key = new StringBuilder().append(basedir).append('|').append(art);
+            for (RemoteRepository repo : request.getRepositories()) {
+                key.append('|').append(repo.getUrl());
+            }
+            File pom = new File(basedir, session.getLocalRepositoryManager().getPathForLocalArtifact(
+                new DefaultArtifact(art.getGroupId(), art.getArtifactId(), "pom", art.getVersion())));
+
+            final String skey = key.toString();
+            final DescriptorCache cache = DescriptorCache.SHARED;
+            Tracker tracker = Tracker.find(request.getTrace());
+            DescriptorCache.Entry entry = cache.get(skey);
+            if (entry != null) return tracked(entry, tracker);
+
+            // if another thread is already reading this descriptor, wait for it to finish
+            CompletableFuture<DescriptorCache.Entry> read =
+                new CompletableFuture<DescriptorCache.Entry>();
+            CompletableFuture<DescriptorCache.Entry> active = reads.putIfAbsent(skey, read);
+            if (active != null) {
+                try {
+                    return tracked(active.join(), tracker);
+                } catch (CompletionException e) {
+                    // the other read failed, so try ourselves to report our own failure
+                    return super.readArtifactDescriptor(session, request);
+                }
+            }
+
+            try {
+                // note the POMs read along the way (parents and imports), to check on cache hits
+                Tracker poms = new Tracker(tracker == null ? null : tracker.stats);
+                ArtifactDescriptorRequest traced = new ArtifactDescriptorRequest(
+                    art, request.getRepositories(), request.getRequestContext());
+                traced.setTrace(RequestTrace.newChild(request.getTrace(), poms));
+                ArtifactDescriptorResult result = super.readArtifactDescriptor(session, traced);
+                List<File> files = new ArrayList<File>();
+                files.add(pom);
+                for (Path path : poms.paths()) files.add(path.toFile());
+                entry = new DescriptorCache.Entry(result, files);
+                // only cache clean reads, if something went wrong, try again next time
+                if (result.getExceptions().isEmpty()) cache.put(skey, entry);
+                read.complete(entry);
+                return tracked(entry, tracker);
+            } catch (ArtifactDescriptorException | RuntimeException e) {
+                read.completeExceptionally(e);
+                throw e;
+            } finally {
+                reads.remove(skey, read);
+            }
+        }
+
+        /** Notes {@code entry}'s POMs with {@code tracker} (if any), which would otherwise not
+          * know that they contributed to its resolution. */
+        private static ArtifactDescriptorResult tracked (
+            DescriptorCache.Entry entry, Tracker tracker) {
+            if (tracker != null) for (File file : entry.poms()) tracker.add(file);
+            return entry.result;
+        }
+
+        private static final ConcurrentMap<String,CompletableFuture<DescriptorCache.Entry>>
+            reads = new ConcurrentHashMap<String,CompletableFuture<DescriptorCache.Entry>>();
+    }
+
+    public static class SharingArtifactResolver
+            extends org.eclipse.aether.internal.impl.DefaultArtifactResolver {
+        @Override public List<ArtifactResult> resolveArtifacts (
+            RepositorySystemSession session, Collection<? extends ArtifactRequest> requests)
+            throws ArtifactResolutionException {
+            // claim the artifacts that nobody else is resolving, note the ones that are in flight
+            List<ArtifactRequest> reqs = new ArrayList<ArtifactRequest>(requests);
+            List<ArtifactRequest> mine = new ArrayList<ArtifactRequest>();
+            List<String> keys = new ArrayList<String>(reqs.size());
+            List<CompletableFuture<ArtifactResult>> futures =
+                new ArrayList<CompletableFuture<ArtifactResult>>(reqs.size());
+            List<Boolean> owned = new ArrayList<Boolean>(reqs.size());
+            File basedir = session.getLocalRepository().getBasedir();
+            for (ArtifactRequest req : reqs) {
+                StringBuilder key = new StringBuilder().append(basedir).append('|').
+                    append(req.getArtifact());
+                for (RemoteRepository repo : req.getRepositories()) {
+                    key.append('|').append(repo.getUrl());
+                }
+                CompletableFuture<ArtifactResult> future = new CompletableFuture<ArtifactResult>();
+                CompletableFuture<ArtifactResult> active = fetches.putIfAbsent(
+                    key.toString(), future);
+                keys.add(key.toString());
+                futures.add(active == null ? future : active);
+                owned.add(active == null);
+                if (active == null) mine.add(req);
+            }
+
+            // resolve our artifacts and publish the results to anyone waiting on them; we must
+            // complete our own futures before waiting on anyone else's, lest we deadlock
+            List<ArtifactResult> results = Collections.emptyList();
+            RuntimeException failure = null;
+            try {
+                if (!mine.isEmpty()) results = super.resolveArtifacts(session, mine);
+            } catch (ArtifactResolutionException e) {
+                results = e.getResults();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            for (int ii = 0, rr = 0; ii < reqs.size(); ii++) {
+                if (!owned.get(ii)) continue;
+                CompletableFuture<ArtifactResult> future = futures.get(ii);
+                if (failure != null) future.completeExceptionally(failure);
+                else future.complete(results.get(rr++));
+                fetches.remove(keys.get(ii), future);
+            }
+            if (failure != null) throw failure;
+
+            List<ArtifactResult> all = new ArrayList<ArtifactResult>(reqs.size());
+            boolean complete = true;
+            for (int ii = 0, rr = 0; ii < reqs.size(); ii++) {
+                ArtifactResult result;
+                if (owned.get(ii)) result = results.get(rr++);
+                else {
+                    // rebind the other thread's result to our request
+                    ArtifactResult other;
+                    try {
+                        other = futures.get(ii).join();
+                    } catch (CompletionException ce) {
+                        // the other resolution blew up, so try ourselves
+                        try {
+                            other = super.resolveArtifacts(
+                                session, Collections.singletonList(reqs.get(ii))).get(0);
+                        } catch (ArtifactResolutionException e) {
+                            other = e.getResults().get(0);
+                        }
+                    }
+                    result = new ArtifactResult(reqs.get(ii));
+                    result.setArtifact(other.getArtifact());
+                    result.setRepository(other.getRepository());
+                    for (Exception e : other.getExceptions()) result.addException(e);
+                }
+                complete &= result.isResolved();
+                all.add(result);
+            }
+            if (!complete) throw new ArtifactResolutionException(all);
+            return all;
+        }
+
+        private static final ConcurrentMap<String,CompletableFuture<ArtifactResult>> fetches =
+            new ConcurrentHashMap<String,CompletableFuture<ArtifactResult>>();
+    }
+
     public static class LockingSyncContextFactory
             extends io.takari.aether.concurrency.LockingSyncContextFactory {
         public LockingSyncContextFactory() {
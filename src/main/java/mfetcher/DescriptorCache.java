@@ -0,0 +1,127 @@
+package mfetcher;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+
+/**
+ * A process-wide LRU cache of artifact descriptors (the dependency information extracted from an
+ * artifact's effective POM). It is shared by all {@link DependencyManager} instances, and entries
+ * are keyed on the local repository, so managers pointing at the same local repository share each
+ * other's descriptors. An entry is dropped if any POM from which it was read (the artifact's own,
+ * its parents and any it imports) is modified.
+ *
+ * <p>The maximum number of descriptors retained is controlled by the
+ * {@code mfetcher.descriptor.cache.size} system property, and defaults to 2000. A size of zero
+ * disables the cache.</p>
+ */
+public class DescriptorCache {
+
+    static final DescriptorCache SHARED = new DescriptorCache(
+        Integer.getInteger("mfetcher.descriptor.cache.size", 2000));
+
+    private final int capacity;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+        // a bare Entry here would name the inherited Map.Entry
+        @Override protected boolean removeEldestEntry (
+            Map.Entry<String,DescriptorCache.Entry> eldest) {
+            if (size() <= capacity) return false;
+            evictions.incrementAndGet();
+            return true;
+        }
+    };
+
+    /** Returns the number of descriptor lookups that were satisfied by the cache. */
+    public long hits () {
+        return hits.get();
+    }
+
+    /** Returns the number of descriptor lookups that required reading a POM. */
+    public long misses () {
+        return misses.get();
+    }
+
+    /** Returns the number of descriptors evicted to keep the cache within its size limit. */
+    public long evictions () {
+        return evictions.get();
+    }
+
+    /** Returns the number of descriptors currently cached. */
+    public synchronized int size () {
+        return entries.size();
+    }
+
+    /** Returns the maximum number of descriptors that will be cached. */
+    public int capacity () {
+        return capacity;
+    }
+
+    /** Discards all cached descriptors. Hit and miss counts are preserved. */
+    public synchronized void clear () {
+        entries.clear();
+    }
+
+    @Override public String toString () {
+        return "DescriptorCache[size=" + size() + "/" + capacity + ", hits=" + hits() +
+            ", misses=" + misses() + ", evictions=" + evictions() + "]";
+    }
+
+    DescriptorCache (int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Returns the cached entry for {@code key}, or null if we have none, or any of the POMs from
+      * which its descriptor was read has since changed. */
+    Entry get (String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && !entry.isCurrent()) {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            entry = null;
+        }
+        (entry == null ? misses : hits).incrementAndGet();
+        return entry;
+    }
+
+    synchronized void put (String key, Entry entry) {
+        if (capacity > 0) entries.put(key, entry);
+    }
+
+    /** A descriptor, and the modification times of the POMs from which it was read. */
+    static class Entry {
+        public final ArtifactDescriptorResult result;
+
+        private final Map<File,Long> stamps = new HashMap<File,Long>();
+
+        public Entry (ArtifactDescriptorResult result, Collection<File> poms) {
+            this.result = result;
+            for (File pom : poms) stamps.put(pom, pom.lastModified());
+        }
+
+        /** Returns the POMs from which the descriptor was read. */
+        public Collection<File> poms () {
+            return Collections.unmodifiableSet(stamps.keySet());
+        }
+
+        /** Returns true if none of our POMs has been modified since the descriptor was read. */
+        public boolean isCurrent () {
+            for (Map.Entry<File,Long> entry : stamps.entrySet()) {
+                if (entry.getKey().lastModified() != entry.getValue()) return false;
+            }
+            return true;
+        }
+    }
+}
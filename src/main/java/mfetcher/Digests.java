@@ -0,0 +1,59 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes SHA-1 digests, as lower case hex (the form of Maven's {@code .sha1} files), which we
+ * use to check artifacts and to name cache entries.
+ */
+class Digests {
+
+    /** Returns the SHA-1 of {@code data}. */
+    public static String sha1Hex (byte[] data) {
+        return hex(sha1().digest(data));
+    }
+
+    /** Returns the SHA-1 of {@code text}, encoded as UTF-8. */
+    public static String sha1Hex (CharSequence text) {
+        return sha1Hex(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the SHA-1 of the contents of {@code file}, which are memory mapped a chunk at a
+      * time rather than copied through a buffer. */
+    public static String sha1Hex (Path file) throws IOException {
+        MessageDigest md = sha1();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                                      Math.min(MAP_CHUNK, size - pos)));
+            }
+        }
+        return hex(md.digest());
+    }
+
+    private static MessageDigest sha1 () {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every JVM must provide SHA-1
+        }
+    }
+
+    private static String hex (byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final long MAP_CHUNK = 64*1024*1024;
+}
@@ -0,0 +1,123 @@
+package mfetcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.RepositoryException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.collection.DependencyGraphTransformationContext;
+import org.eclipse.aether.collection.DependencyGraphTransformer;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
+
+/**
+ * Utilities for working with raw (untransformed) dependency graphs, which allows a single
+ * collection to be shared by multiple resolutions, each of which does its own conflict resolution.
+ */
+class Graphs {
+
+    /**
+     * Returns the key used to match a direct dependency with the node(s) that the collector created
+     * for it: its group, artifact, classifier and extension, prior to any relocation.
+     */
+    public static String directKey (Artifact art) {
+        return art.getGroupId() + ":" + art.getArtifactId() + ":" + art.getClassifier() + ":" +
+            art.getExtension();
+    }
+
+    /** Returns the {@link #directKey} of the dependency from which {@code node} was created. */
+    public static String directKey (DependencyNode node) {
+        List<? extends Artifact> relocs = node.getRelocations();
+        return directKey(relocs.isEmpty() ? node.getArtifact() : relocs.get(0));
+    }
+
+    /**
+     * Creates a new root node whose children are copies of {@code children} and their transitive
+     * children. Graph transformation modifies the graph in place, so a raw graph must be copied
+     * before it is transformed if it is to be transformed again. Shared nodes and child lists
+     * remain shared in the copy, as the collector intends.
+     */
+    public static DependencyNode copyRoot (List<DependencyNode> children) {
+        Map<Object,Object> copies = new IdentityHashMap<Object,Object>();
+        DefaultDependencyNode root = new DefaultDependencyNode((Dependency)null);
+        for (DependencyNode child : children) root.getChildren().add(copy(child, copies));
+        return root;
+    }
+
+    /**
+     * Applies {@code session}'s graph transformer (i.e. conflict resolution) to {@code root}.
+     * @return the transformed root.
+     */
+    public static DependencyNode transform (RepositorySystemSession session, DependencyNode root)
+        throws RepositoryException {
+        DependencyGraphTransformer transformer = session.getDependencyGraphTransformer();
+        if (transformer == null) return root;
+        return transformer.transformGraph(root, new TransformContext(session));
+    }
+
+    /**
+     * Returns the nodes (excluding the root) in the graph rooted at {@code root} that were not
+     * conflict losers, in preorder, which is the order in which Maven would have resolved them.
+     */
+    public static List<DependencyNode> winners (DependencyNode root) {
+        final List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+        root.accept(new TreeDependencyVisitor(new DependencyVisitor() {
+            public boolean visitEnter (DependencyNode node) {
+                if (node.getData().get(ConflictResolver.NODE_DATA_WINNER) != null) return false;
+                if (node.getDependency() != null) nodes.add(node);
+                return true;
+            }
+            public boolean visitLeave (DependencyNode node) {
+                return true;
+            }
+        }));
+        return nodes;
+    }
+
+    private static DependencyNode copy (DependencyNode node, Map<Object,Object> copies) {
+        DependencyNode copy = (DependencyNode)copies.get(node);
+        if (copy != null) return copy;
+        copy = new DefaultDependencyNode(node);
+        copies.put(node, copy);
+
+        List<DependencyNode> kids = node.getChildren();
+        @SuppressWarnings("unchecked")
+        List<DependencyNode> ckids = (List<DependencyNode>)copies.get(kids);
+        if (ckids == null) {
+            ckids = new ArrayList<DependencyNode>(kids.size());
+            copies.put(kids, ckids);
+            for (DependencyNode kid : kids) ckids.add(copy(kid, copies));
+        }
+        copy.setChildren(ckids);
+        return copy;
+    }
+
+    private static class TransformContext implements DependencyGraphTransformationContext {
+        private final RepositorySystemSession session;
+        private final Map<Object,Object> data = new HashMap<Object,Object>();
+
+        public TransformContext (RepositorySystemSession session) {
+            this.session = session;
+        }
+
+        public RepositorySystemSession getSession () {
+            return session;
+        }
+
+        public Object get (Object key) {
+            return data.get(key);
+        }
+
+        public Object put (Object key, Object value) {
+            return data.put(key, value);
+        }
+    }
+}
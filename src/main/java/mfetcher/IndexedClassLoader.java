@@ -0,0 +1,176 @@
+package mfetcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Loads classes and resources from the jars of a {@link ClassIndex}, consulting only the jars which
+ * contain the package in question, and opening each jar only when something is first loaded from
+ * it. Where multiple jars contain the same class or resource, the first in classpath order wins, as
+ * with a {@code URLClassLoader}. Parent-first delegation is used as usual.
+ */
+public class IndexedClassLoader extends ClassLoader implements Closeable {
+
+    static {
+        registerAsParallelCapable();
+    }
+
+    /** The index from which we load. */
+    public final ClassIndex index;
+
+    private final JarFile[] jars; // opened lazily, guarded by themselves
+    private final ProtectionDomain[] domains;
+    // the packages we have defined (getPackage would do, but is deprecated from Java 9)
+    private final Set<String> packages =
+        Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+    public IndexedClassLoader (ClassIndex index, ClassLoader parent) {
+        super(parent);
+        this.index = index;
+        this.jars = new JarFile[index.jars.size()];
+        this.domains = new ProtectionDomain[jars.length];
+    }
+
+    @Override protected Class<?> findClass (String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        IOException failure = null;
+        for (int jar : index.jarsForResource(path)) {
+            try {
+                JarFile file = jar(jar);
+                JarEntry entry = file.getJarEntry(path);
+                if (entry == null) continue;
+                byte[] bytes;
+                try (InputStream in = file.getInputStream(entry)) {
+                    bytes = readFully(in, (int)entry.getSize());
+                }
+                definePackage(name, file);
+                return defineClass(name, bytes, 0, bytes.length, domain(jar));
+            } catch (IOException e) {
+                // an unreadable jar must not hide the class if a later jar has it
+                if (DependencyManager.verbose) System.out.println(
+                    "Failed to read " + index.jars.get(jar) + ": " + e);
+                if (failure == null) failure = e;
+            }
+        }
+        throw new ClassNotFoundException(name, failure);
+    }
+
+    @Override protected URL findResource (String name) {
+        for (int jar : index.jarsForResource(name)) {
+            try {
+                if (jar(jar).getEntry(name) != null) return url(jar, name);
+            } catch (IOException e) {
+                if (DependencyManager.verbose) System.out.println(
+                    "Failed to read " + index.jars.get(jar) + ": " + e);
+            }
+        }
+        return null;
+    }
+
+    @Override protected Enumeration<URL> findResources (String name) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        for (int jar : index.jarsForResource(name)) {
+            if (jar(jar).getEntry(name) != null) urls.add(url(jar, name));
+        }
+        return Collections.enumeration(urls);
+    }
+
+    /** Closes the jars that we have opened. Classes and resources can no longer be loaded. */
+    @Override public void close () throws IOException {
+        IOException failure = null;
+        for (int ii = 0; ii < jars.length; ii++) {
+            synchronized (jars) {
+                if (jars[ii] == null) continue;
+                try {
+                    jars[ii].close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    @Override public String toString () {
+        return "IndexedClassLoader(" + index + ")";
+    }
+
+    protected JarFile jar (int jar) throws IOException {
+        synchronized (jars) {
+            if (jars[jar] == null) jars[jar] = new JarFile(index.jars.get(jar).toFile());
+            return jars[jar];
+        }
+    }
+
+    protected ProtectionDomain domain (int jar) throws MalformedURLException {
+        synchronized (domains) {
+            if (domains[jar] == null) {
+                CodeSource source = new CodeSource(
+                    index.jars.get(jar).toUri().toURL(), (CodeSigner[])null);
+                domains[jar] = new ProtectionDomain(source, null, this, null);
+            }
+            return domains[jar];
+        }
+    }
+
+    protected URL url (int jar, String name) throws MalformedURLException {
+        Path path = index.jars.get(jar);
+        return new URL("jar:" + path.toUri() + "!/" + name);
+    }
+
+    /** Defines the package of class {@code name}, if it is not yet defined, from the manifest of
+      * {@code file} (as {@code URLClassLoader} does). */
+    protected void definePackage (String name, JarFile file) throws IOException {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return;
+        String pkg = name.substring(0, dot);
+        if (packages.contains(pkg)) return;
+        Manifest man = file.getManifest();
+        Attributes attrs = (man == null) ? null : man.getMainAttributes();
+        try {
+            if (attrs == null) definePackage(pkg, null, null, null, null, null, null, null);
+            else definePackage(pkg, attrs.getValue(Attributes.Name.SPECIFICATION_TITLE),
+                               attrs.getValue(Attributes.Name.SPECIFICATION_VERSION),
+                               attrs.getValue(Attributes.Name.SPECIFICATION_VENDOR),
+                               attrs.getValue(Attributes.Name.IMPLEMENTATION_TITLE),
+                               attrs.getValue(Attributes.Name.IMPLEMENTATION_VERSION),
+                               attrs.getValue(Attributes.Name.IMPLEMENTATION_VENDOR), null);
+        } catch (IllegalArgumentException e) {
+            // another thread (or on Java 8, an ancestor loader) defined it first
+        }
+        packages.add(pkg);
+    }
+
+    private static byte[] readFully (InputStream in, int size) throws IOException {
+        byte[] bytes = new byte[size >= 0 ? size : 8192];
+        int length = 0;
+        while (true) {
+            if (length == bytes.length) {
+                if (size >= 0) break;
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            int read = in.read(bytes, length, bytes.length - length);
+            if (read < 0) break;
+            length += read;
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+}
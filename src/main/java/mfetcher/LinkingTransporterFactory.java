@@ -0,0 +1,141 @@
+package mfetcher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.AbstractTransporter;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transfer.NoTransporterException;
+
+/**
+ * Transports artifacts from {@code file:} repositories (local directories, NFS mounts and the
+ * like) into the local repository without copying them where possible. By default each artifact
+ * is hard linked into place, falling back to a channel-to-channel copy if the two are on different
+ * file systems (or linking is otherwise disallowed). The {@code mfetcher.file.install} system
+ * property selects the strategy: {@code link} (the default), {@code symlink} or {@code copy}.
+ *
+ * <p>Symbolic links leave the local repository dependent on the mirror, so are best reserved for
+ * mirrors that are never pruned. Checksums are still verified against the mirror's sidecar files,
+ * which costs a read of each artifact but no writes.</p>
+ */
+public class LinkingTransporterFactory implements TransporterFactory {
+
+    public static final String PROP_FILE_INSTALL = "mfetcher.file.install";
+
+    private static final String install = System.getProperty(PROP_FILE_INSTALL, "link");
+
+    @Override public Transporter newInstance (RepositorySystemSession session,
+                                              RemoteRepository repo)
+        throws NoTransporterException {
+        if (!"file".equalsIgnoreCase(repo.getProtocol())) throw new NoTransporterException(repo);
+        String url = repo.getUrl();
+        try {
+            return new LinkingTransporter(Paths.get(new URI(url.endsWith("/") ? url : url + "/")));
+        } catch (Exception e) {
+            throw new NoTransporterException(repo, e);
+        }
+    }
+
+    @Override public float getPriority () {
+        return 5;
+    }
+
+    protected static class LinkingTransporter extends AbstractTransporter {
+        public final Path basedir;
+
+        /** Cleared if hard linking fails, so that we go straight to copying thereafter. */
+        private volatile boolean linkable = !"copy".equals(install);
+
+        public LinkingTransporter (Path basedir) {
+            this.basedir = basedir;
+        }
+
+        @Override public int classify (Throwable error) {
+            return (error instanceof FileNotFoundException || error instanceof NoSuchFileException) ?
+                ERROR_NOT_FOUND : ERROR_OTHER;
+        }
+
+        @Override protected void implPeek (PeekTask task) throws Exception {
+            Path source = resolve(task.getLocation());
+            if (!Files.isRegularFile(source)) throw new FileNotFoundException(source.toString());
+        }
+
+        @Override protected void implGet (GetTask task) throws Exception {
+            Path source = resolve(task.getLocation());
+            if (!Files.isRegularFile(source)) throw new FileNotFoundException(source.toString());
+            File target = task.getDataFile();
+            // checksums and such are wanted in memory, there's nothing to link them to
+            if (target == null) {
+                utilGet(task, new FileInputStream(source.toFile()), true, Files.size(source), false);
+                return;
+            }
+
+            long length = install(source, target.toPath());
+            // report the transfer as already complete: this causes the connector to checksum the
+            // installed file (from disk) rather than expecting us to stream it the data
+            task.getListener().transportStarted(length, length);
+        }
+
+        @Override protected void implPut (PutTask task) throws Exception {
+            Path target = resolve(task.getLocation());
+            Files.createDirectories(target.getParent());
+            utilPut(task, new FileOutputStream(target.toFile()), true);
+        }
+
+        @Override protected void implClose () {
+            // nothing to close
+        }
+
+        protected Path resolve (URI location) {
+            return basedir.resolve(location.getPath()).normalize();
+        }
+
+        protected long install (Path source, Path target) throws IOException {
+            // the connector may have created the (empty) target already, links need it gone
+            Files.deleteIfExists(target);
+            if ("symlink".equals(install)) {
+                Files.createSymbolicLink(target, source.toAbsolutePath());
+                return Files.size(source);
+            }
+            if (linkable) {
+                try {
+                    Files.createLink(target, source);
+                    return Files.size(source);
+                } catch (FileSystemException | UnsupportedOperationException e) {
+                    // different file systems, or linking someone else's files is disallowed
+                    linkable = false;
+                }
+            }
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                long pos = 0;
+                while (pos < size) {
+                    long copied = in.transferTo(pos, size - pos, out);
+                    if (copied <= 0) break; // source shrank under us, let the checksum catch it
+                    pos += copied;
+                }
+                return pos;
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the result of a resolution so that it can be reproduced later without any of the
+ * machinery of resolution. A lockfile lists the root coords, and for each resolved artifact its
+ * coord, its path relative to the local repository, its size and its SHA-1 checksum.
+ *
+ * <p>Reading a lockfile and {@link #resolve}ing it uses only JDK classes (no Aether or Maven
+ * classes are loaded), unless an artifact is missing from the local repository, in which case a
+ * {@link Resolver} is called upon to resolve the roots in full. For example:</p>
+ *
+ * <pre>{@code
+ * Map<Coord,Path> jars = Lockfile.read(lockPath).resolve(
+ *     localRepo, false, Lockfile.resolver(localRepo, repos));
+ * }</pre>
+ */
+public class Lockfile {
+
+    /** Resolves a lockfile's roots when its artifacts cannot be found. */
+    public interface Resolver {
+        /** Resolves {@code roots}, as {@link DependencyManager#resolveDependencies} does. */
+        Map<Coord,Path> resolve (List<Coord> roots);
+    }
+
+    /** A single locked artifact. */
+    public static class Entry {
+        public final Coord coord;
+        /** The artifact's path relative to the local repository, with {@code /} separators. */
+        public final String path;
+        public final long size;
+        public final String sha1;
+
+        public Entry (Coord coord, String path, long size, String sha1) {
+            this.coord = coord;
+            this.path = path;
+            this.size = size;
+            this.sha1 = sha1;
+        }
+
+        @Override public String toString () {
+            return coord + " -> " + path;
+        }
+    }
+
+    private static final String HEADER = "# mfetcher lockfile v1";
+
+    /** The coords which were resolved to produce this lockfile. */
+    public final List<Coord> roots;
+
+    /** The resolved artifacts, in resolution order. */
+    public final List<Entry> entries;
+
+    /**
+     * Creates a lockfile for the result of resolving {@code roots}, which must have succeeded
+     * completely and placed its artifacts in {@code localRepo}. Reads every artifact to compute
+     * its checksum.
+     *
+     * @throws IllegalArgumentException if an artifact failed to resolve or is not in
+     * {@code localRepo}.
+     */
+    public static Lockfile create (Path localRepo, List<Coord> roots, Map<Coord,Path> artifacts)
+        throws IOException {
+        Path base = localRepo.toAbsolutePath().normalize();
+        List<Entry> entries = new ArrayList<Entry>(artifacts.size());
+        for (Map.Entry<Coord,Path> entry : artifacts.entrySet()) {
+            Path path = entry.getValue();
+            if (path == null) throw new IllegalArgumentException(
+                "Cannot lock unresolved artifact " + entry.getKey());
+            path = path.toAbsolutePath().normalize();
+            if (!path.startsWith(base)) throw new IllegalArgumentException(
+                entry.getKey() + " is not in the local repository " + base + ": " + path);
+            String rpath = base.relativize(path).toString().replace(path.getFileSystem().
+                                                                    getSeparator(), "/");
+            entries.add(new Entry(entry.getKey(), rpath, Files.size(path), Digests.sha1Hex(path)));
+        }
+        return new Lockfile(roots, entries);
+    }
+
+    /** Reads the lockfile at {@code file}. */
+    public static Lockfile read (Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !HEADER.equals(lines.get(0))) throw new IOException(
+            "Not an mfetcher lockfile: " + file);
+        List<Coord> roots = new ArrayList<Coord>();
+        List<Entry> entries = new ArrayList<Entry>();
+        try {
+            for (int ii = 1, ll = lines.size(); ii < ll; ii++) {
+                String line = lines.get(ii);
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] bits = line.split("\t", -1);
+                if ("root".equals(bits[0])) {
+                    Coord root = Coord.parse(bits[1]);
+                    if (bits[2].length() > 0) {
+                        root = root.withExclusions(Coord.parseExclusions(bits[2]));
+                    }
+                    roots.add(root);
+                } else if ("dep".equals(bits[0])) {
+                    entries.add(new Entry(Coord.parse(bits[1]), bits[2], Long.parseLong(bits[3]),
+                                          bits[4]));
+                } else throw new IOException(
+                    "Invalid line " + (ii+1) + " in " + file + ": " + line);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed lockfile " + file + ": " + e.getMessage(), e);
+        }
+        return new Lockfile(roots, entries);
+    }
+
+    /**
+     * Returns a resolver which resolves via a {@link DependencyManager} configured with
+     * {@code localRepo} and {@code repos}. The dependency manager (and all of the Aether and Maven
+     * machinery) is only created if the resolver is called upon.
+     */
+    public static Resolver resolver (Path localRepo, List<String> repos) {
+        return new ManagerResolver(localRepo, repos);
+    }
+
+    public Lockfile (List<Coord> roots, List<Entry> entries) {
+        this.roots = Collections.unmodifiableList(new ArrayList<Coord>(roots));
+        this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+    }
+
+    /** Writes this lockfile to {@code file} (atomically, so readers never see a partial file). */
+    public void write (Path file) throws IOException {
+        List<String> lines = new ArrayList<String>(roots.size() + entries.size() + 1);
+        lines.add(HEADER);
+        for (Coord root : roots) {
+            StringBuilder excls = new StringBuilder();
+            for (Coord.Exclusion ex : root.exclusions) {
+                if (excls.length() > 0) excls.append(',');
+                excls.append(ex);
+            }
+            lines.add("root\t" + root + "\t" + excls);
+        }
+        for (Entry entry : entries) {
+            lines.add("dep\t" + entry.coord + "\t" + entry.path + "\t" + entry.size + "\t" +
+                      entry.sha1);
+        }
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Maps each locked artifact to its path in {@code localRepo}. If any artifact is missing (or
+     * has the wrong size), {@code fallback} is used to resolve our roots afresh, and its result is
+     * returned instead.
+     *
+     * @param verify if true, every artifact is also read and its checksum compared with the locked
+     * checksum, and a mismatch is treated like a missing artifact.
+     * @param fallback the resolver to use if the local repository cannot satisfy this lockfile. If
+     * null, an {@link IllegalStateException} is thrown instead.
+     */
+    public Map<Coord,Path> resolve (Path localRepo, boolean verify, Resolver fallback)
+        throws IOException {
+        Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
+        for (Entry entry : entries) {
+            Path path = localRepo.resolve(entry.path).toAbsolutePath();
+            if (!Files.isRegularFile(path) || Files.size(path) != entry.size ||
+                (verify && !entry.sha1.equals(Digests.sha1Hex(path)))) {
+                if (fallback == null) throw new IllegalStateException(
+                    "Missing or corrupt locked artifact: " + entry.coord + " (" + path + ")");
+                return fallback.resolve(roots);
+            }
+            jars.put(entry.coord, path);
+        }
+        return jars;
+    }
+
+    @Override public String toString () {
+        return "Lockfile" + roots + " (" + entries.size() + " artifacts)";
+    }
+
+    // a separate class so that DependencyManager is not loaded until it is actually needed
+    private static class ManagerResolver implements Resolver {
+        private final Path localRepo;
+        private final List<String> repos;
+
+        public ManagerResolver (Path localRepo, List<String> repos) {
+            this.localRepo = localRepo;
+            this.repos = repos;
+        }
+
+        public Map<Coord,Path> resolve (List<Coord> roots) {
+            return new DependencyManager(localRepo, repos, false, false).resolveDependencies(roots);
+        }
+    }
+}
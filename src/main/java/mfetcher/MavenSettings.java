@@ -1,7 +1,11 @@
 package mfetcher;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
@@ -30,21 +34,51 @@ import org.sonatype.plexus.components.cipher.PlexusCipherException;
 import org.sonatype.plexus.components.sec.dispatcher.DefaultSecDispatcher;
 
 /**
- * Handles reading Maven settings from {@code settings.xml}.
+ * Handles reading Maven settings from {@code settings.xml}. Settings are expensive to read, so
+ * most callers should use the process-wide {@link #shared} instance, which is only reread when the
+ * settings files change. Instances (and their selectors) are not modified after construction, and
+ * may be used from any number of threads.
  */
 public class MavenSettings {
 
     public final Settings settings;
     public final ProxySelector proxySelector;
 
+    private final MirrorSelector mirrorSelector;
+    private final AuthenticationSelector authSelector;
+    private final List<Path> files;
+    private final List<Long> stamps;
+
+    private static MavenSettings shared;
+
+    /**
+     * Returns settings shared by the whole process. They are read on first use, and reread if
+     * {@code settings.xml} (user or global) or {@code settings-security.xml} has since been
+     * created, modified or deleted. Changes to the environment or system properties referenced by
+     * the settings are not noticed.
+     */
+    public static synchronized MavenSettings shared () {
+        if (shared == null || !shared.isCurrent()) shared = new MavenSettings();
+        return shared;
+    }
+
     public MavenSettings () {
         DefaultSettingsBuildingRequest request = new DefaultSettingsBuildingRequest();
-        request.setUserSettingsFile(LOCAL_M2.resolve("settings.xml").toFile());
+        Path user = LOCAL_M2.resolve("settings.xml");
+        request.setUserSettingsFile(user.toFile());
         Path mhome = getMavenHome();
-        request.setGlobalSettingsFile(mhome == null ? null :
-            mhome.resolve("conf").resolve("settings.xml").toFile());
+        Path global = (mhome == null) ? null : mhome.resolve("conf").resolve("settings.xml");
+        request.setGlobalSettingsFile(global == null ? null : global.toFile());
         request.setSystemProperties(getSystemProperties());
 
+        // note the files' modification times before reading them, so that a change while we're
+        // reading them causes a reread next time
+        files = new ArrayList<Path>();
+        files.add(user);
+        files.add(LOCAL_M2.resolve("settings-security.xml"));
+        if (global != null) files.add(global);
+        stamps = stamps(files);
+
         // System.out.println("Maven home " + mhome);
         // System.out.println("Settings " + LOCAL_M2.resolve("settings.xml"));
 
@@ -57,6 +91,8 @@ public class MavenSettings {
             settings.setServers(result.getServers());
             settings.setProxies(result.getProxies());
             proxySelector = getProxySelector();
+            mirrorSelector = newMirrorSelector();
+            authSelector = newAuthSelector();
 
             // System.out.println("SETTINGS: " + settings);
         } catch (SettingsBuildingException e) {
@@ -64,7 +100,20 @@ public class MavenSettings {
         }
     }
 
+    /** Returns true if none of the files from which these settings were read have changed. */
+    public boolean isCurrent () {
+        return stamps.equals(stamps(files));
+    }
+
     public MirrorSelector getMirrorSelector () {
+        return mirrorSelector;
+    }
+
+    public AuthenticationSelector getAuthSelector () {
+        return authSelector;
+    }
+
+    private MirrorSelector newMirrorSelector () {
         DefaultMirrorSelector selector = new DefaultMirrorSelector();
         for (Mirror mirror : settings.getMirrors()) selector.add(
             String.valueOf(mirror.getId()), mirror.getUrl(), mirror.getLayout(), false,
@@ -72,7 +121,7 @@ public class MavenSettings {
         return selector;
     }
 
-    public AuthenticationSelector getAuthSelector () {
+    private AuthenticationSelector newAuthSelector () {
         DefaultAuthenticationSelector selector = new DefaultAuthenticationSelector();
         for (Server server : settings.getServers()) {
             AuthenticationBuilder auth = new AuthenticationBuilder();
@@ -125,6 +174,19 @@ public class MavenSettings {
     private static final Path USER_HOME = Paths.get(System.getProperty("user.home"));
     private static final Path LOCAL_M2 = USER_HOME.resolve(".m2");
 
+    private static List<Long> stamps (List<Path> files) {
+        List<Long> stamps = new ArrayList<Long>(files.size());
+        for (Path file : files) {
+            // a missing file gets a stamp of -1, so creating one is noticed
+            try {
+                stamps.add(Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                stamps.add(-1L);
+            }
+        }
+        return stamps;
+    }
+
     private static Path getMavenHome () {
         String menv = System.getenv("M2_HOME");
         if (menv != null && menv.length() > 0) return Paths.get(menv);
@@ -0,0 +1,85 @@
+package mfetcher;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers which artifacts were not found in which remote repositories, so that we don't ask
+ * again (for a while). Entries are kept in an {@link AppendLog} in the local repository, which is
+ * read once per process. Each line is
+ * {@code <millis> TAB <repo url> TAB <artifact>}; a time of zero records that the artifact has
+ * since been found. How long an entry is believed is up to each caller (managers sharing a local
+ * repository may differ), so the log keeps the latest record of every artifact still missing.
+ */
+class MissingCache {
+
+    private static final String FILE = "missing.log";
+
+    private static final ConcurrentMap<Path,MissingCache> caches =
+        new ConcurrentHashMap<Path,MissingCache>();
+
+    private final AppendLog log;
+    private Map<String,Long> missing; // lazily loaded
+
+    /** Returns the cache for the local repository at {@code localRepo}, which is shared by all
+      * dependency managers in this process. */
+    public static MissingCache forRepo (Path localRepo) {
+        Path file = localRepo.toAbsolutePath().normalize().resolve(".mfetcher").resolve(FILE);
+        MissingCache cache = caches.get(file);
+        if (cache == null) {
+            MissingCache created = new MissingCache(file);
+            cache = caches.putIfAbsent(file, created);
+            if (cache == null) cache = created;
+        }
+        return cache;
+    }
+
+    protected MissingCache (Path file) {
+        this.log = new AppendLog(file);
+    }
+
+    /** Returns true if {@code artifact} was not found in {@code repo} within the last {@code ttl}
+      * millis. */
+    public synchronized boolean isMissing (String repo, String artifact, long ttl) {
+        Long when = load().get(repo + "\t" + artifact);
+        return when != null && System.currentTimeMillis() - when < ttl;
+    }
+
+    /** Records that {@code artifact} was not found in {@code repo}. */
+    public synchronized void missing (String repo, String artifact) {
+        long now = System.currentTimeMillis();
+        load().put(repo + "\t" + artifact, now);
+        log.append(now + "\t" + repo + "\t" + artifact);
+    }
+
+    /** Records that {@code artifact} was found in {@code repo}, if it was previously missing. */
+    public synchronized void found (String repo, String artifact) {
+        if (load().remove(repo + "\t" + artifact) != null) {
+            log.append("0\t" + repo + "\t" + artifact);
+        }
+    }
+
+    protected Map<String,Long> load () {
+        if (missing != null) return missing;
+        missing = new HashMap<String,Long>();
+        List<String> lines = log.read();
+        for (String line : lines) {
+            String[] bits = line.split("\t", 3);
+            if (bits.length != 3) continue; // a torn write, perhaps
+            String key = bits[1] + "\t" + bits[2];
+            try {
+                long when = Long.parseLong(bits[0]);
+                if (when == 0) missing.remove(key);
+                else missing.put(key, when);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+        }
+        log.compact(lines.size(), missing);
+        return missing;
+    }
+}
@@ -0,0 +1,43 @@
+package mfetcher;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+/**
+ * The result of {@link DependencyManager#resolveGraph}, which retains the (unresolved) dependency
+ * graph of each root, so that it may be cheaply updated when the roots change via
+ * {@link DependencyManager#update}.
+ */
+public class Resolution {
+
+    /** The root coords that were resolved. */
+    public final List<Coord> roots;
+
+    /** The resolved artifacts, as described by {@link DependencyManager#resolveDependencies}. */
+    public final Map<Coord,Path> artifacts;
+
+    /** The repositories against which this resolution was made (see {@code repoUrls}). */
+    final List<String> repos;
+    /** The raw (untransformed) graph collected for each root. */
+    final Map<Coord,List<DependencyNode>> graphs;
+    /** The results of the artifact requests that produced {@link #artifacts}. */
+    final Map<String,ArtifactResult> results;
+
+    Resolution (List<Coord> roots, Map<Coord,Path> artifacts, List<String> repos,
+                Map<Coord,List<DependencyNode>> graphs, Map<String,ArtifactResult> results) {
+        this.roots = Collections.unmodifiableList(roots);
+        this.artifacts = Collections.unmodifiableMap(artifacts);
+        this.repos = repos;
+        this.graphs = graphs;
+        this.results = results;
+    }
+
+    @Override public String toString () {
+        return "Resolution" + roots;
+    }
+}
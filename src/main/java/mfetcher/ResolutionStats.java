@@ -0,0 +1,163 @@
+package mfetcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Accumulates metrics for one or more resolutions. Pass an instance to
+ * {@link DependencyManager#resolveDependencies(java.util.List,ResolutionStats)} and inspect it
+ * once the call returns. The same instance may be passed to many resolutions (including concurrent
+ * ones) to aggregate their metrics.
+ */
+public class ResolutionStats {
+
+    private int cacheHits, localHits, remoteFetches;
+    private int checksumFailures, transferFailures, retries;
+    private long collectNanos, resolveNanos, downloadMillis, downloadBytes;
+    // transfer resources are reused when a download is retried, so track the ones we've seen
+    private final Set<Object> started =
+        Collections.newSetFromMap(new WeakHashMap<Object,Boolean>());
+    private final Map<String,Transfers> artifacts = new HashMap<String,Transfers>();
+    private final Map<String,Transfers> repositories = new HashMap<String,Transfers>();
+
+    /** Metrics for the transfers of a single artifact or from a single repository. */
+    public static class Transfers {
+        /** The number of successful transfers. */
+        public final int count;
+        /** The total number of bytes transferred. */
+        public final long bytes;
+        /** The total time spent transferring, in milliseconds. */
+        public final long millis;
+
+        public Transfers (int count, long bytes, long millis) {
+            this.count = count;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        Transfers plus (long bytes, long millis) {
+            return new Transfers(count + 1, this.bytes + bytes, this.millis + millis);
+        }
+
+        @Override public String toString () {
+            return count + " transfers, " + bytes + " bytes, " + millis + "ms";
+        }
+    }
+
+    /** Returns the number of resolutions answered from the result cache. */
+    public synchronized int cacheHits () {
+        return cacheHits;
+    }
+
+    /** Returns the total time spent collecting dependency graphs (reading POMs, resolving
+      * versions and resolving conflicts), in nanoseconds. */
+    public synchronized long collectNanos () {
+        return collectNanos;
+    }
+
+    /** Returns the total time spent resolving artifacts (locating them in the local repository
+      * and downloading those which are missing), in nanoseconds. */
+    public synchronized long resolveNanos () {
+        return resolveNanos;
+    }
+
+    /** Returns the total time spent downloading, in milliseconds. As artifacts are downloaded in
+      * parallel, this may exceed the wall clock time spent resolving. */
+    public synchronized long downloadMillis () {
+        return downloadMillis;
+    }
+
+    /** Returns the total number of bytes downloaded. */
+    public synchronized long downloadBytes () {
+        return downloadBytes;
+    }
+
+    /** Returns the number of artifacts (including POMs, unless their descriptors were already
+      * cached) that were found in the local repository. */
+    public synchronized int localHits () {
+        return localHits;
+    }
+
+    /** Returns the number of artifacts (including POMs) that were downloaded. */
+    public synchronized int remoteFetches () {
+        return remoteFetches;
+    }
+
+    /** Returns the number of downloads whose checksums did not match. */
+    public synchronized int checksumFailures () {
+        return checksumFailures;
+    }
+
+    /** Returns the number of downloads which failed (including those of missing artifacts). */
+    public synchronized int transferFailures () {
+        return transferFailures;
+    }
+
+    /** Returns the number of downloads which were attempted more than once. */
+    public synchronized int retries () {
+        return retries;
+    }
+
+    /** Returns the downloads performed, keyed by the repository-relative path of the file. */
+    public synchronized Map<String,Transfers> artifacts () {
+        return Collections.unmodifiableMap(new HashMap<String,Transfers>(artifacts));
+    }
+
+    /** Returns the downloads performed, keyed by the URL of the repository. */
+    public synchronized Map<String,Transfers> repositories () {
+        return Collections.unmodifiableMap(new HashMap<String,Transfers>(repositories));
+    }
+
+    @Override public synchronized String toString () {
+        return "ResolutionStats[cacheHits=" + cacheHits +
+            ", collect=" + collectNanos / 1000000 + "ms, resolve=" + resolveNanos / 1000000 +
+            "ms, download=" + downloadMillis + "ms/" + downloadBytes + "b" +
+            ", localHits=" + localHits + ", remoteFetches=" + remoteFetches +
+            ", checksumFailures=" + checksumFailures + ", transferFailures=" + transferFailures +
+            ", retries=" + retries + "]";
+    }
+
+    synchronized void cacheHit () {
+        cacheHits++;
+    }
+
+    synchronized void collected (long nanos) {
+        collectNanos += nanos;
+    }
+
+    synchronized void resolved (long nanos) {
+        resolveNanos += nanos;
+    }
+
+    synchronized void localHit () {
+        localHits++;
+    }
+
+    synchronized void remoteFetch () {
+        remoteFetches++;
+    }
+
+    synchronized void transferStarted (Object resource) {
+        if (!started.add(resource)) retries++;
+    }
+
+    synchronized void transferSucceeded (String repo, String path, long bytes, long millis) {
+        downloadBytes += bytes;
+        downloadMillis += millis;
+        Transfers art = artifacts.get(path);
+        artifacts.put(path, art == null ? new Transfers(1, bytes, millis) : art.plus(bytes, millis));
+        Transfers rep = repositories.get(repo);
+        repositories.put(repo, rep == null ? new Transfers(1, bytes, millis) : rep.plus(bytes, millis));
+    }
+
+    synchronized void transferCorrupted () {
+        checksumFailures++;
+    }
+
+    synchronized void transferFailed () {
+        transferFailures++;
+    }
+}
@@ -0,0 +1,127 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the results of {@link DependencyManager#resolveDependencies} in the local repository so
+ * that a later resolution of the same coords against the same repositories can skip graph
+ * collection entirely. An entry is considered valid as long as every artifact it names still
+ * exists and every POM that was read to produce it has the same modification time.
+ */
+class ResultCache {
+
+    private static final String HEADER = "# mfetcher resolution cache v1";
+
+    private final Path dir;
+
+    public ResultCache (Path localRepo) {
+        this.dir = localRepo.resolve(".mfetcher").resolve("results");
+    }
+
+    /**
+     * Computes the cache key for a resolution of {@code coords} (including their classifiers and
+     * exclusions) against {@code repos} (the URLs of the remote repositories).
+     */
+    public static String key (List<Coord> coords, List<String> repos) {
+        StringBuilder sb = new StringBuilder();
+        for (Coord coord : coords) {
+            sb.append(coord).append('|').append(coord.exclusions).append('\n');
+        }
+        for (String repo : repos) sb.append(repo).append('\n');
+        return Digests.sha1Hex(sb);
+    }
+
+    /**
+     * Returns the cached resolution for {@code key}, or null if there is no entry or the entry is
+     * stale. Only file metadata is consulted, no POMs or artifacts are read.
+     */
+    public Map<Coord,Path> load (String key) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(dir.resolve(key), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null; // no entry (or an unreadable one)
+        }
+        if (lines.isEmpty() || !HEADER.equals(lines.get(0))) return null;
+
+        Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
+        try {
+            for (int ii = 1, ll = lines.size(); ii < ll; ii++) {
+                String[] bits = lines.get(ii).split("\t", -1);
+                if ("pom".equals(bits[0])) {
+                    Path pom = Paths.get(bits[2]);
+                    if (Files.getLastModifiedTime(pom).toMillis() != Long.parseLong(bits[1])) {
+                        return null;
+                    }
+                } else if ("dep".equals(bits[0])) {
+                    Coord coord = new Coord(bits[1], bits[2], bits[3], bits[4], bits[5]).intern();
+                    Path path = Paths.get(bits[6]);
+                    if (!Files.exists(path)) return null;
+                    jars.put(coord, path);
+                } else return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            return null; // a POM went missing or the entry is malformed, either way it's stale
+        }
+        return jars;
+    }
+
+    /**
+     * Records {@code jars} as the result of the resolution identified by {@code key}. {@code poms}
+     * are the POM files that were read during the resolution.
+     */
+    public void store (String key, Map<Coord,Path> jars, Collection<Path> poms) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        lines.add(HEADER);
+        for (Path pom : poms) {
+            if (!Files.exists(pom)) continue;
+            lines.add("pom\t" + Files.getLastModifiedTime(pom).toMillis() + "\t" + pom);
+        }
+        for (Map.Entry<Coord,Path> entry : jars.entrySet()) {
+            Coord coord = entry.getKey();
+            lines.add("dep\t" + coord.groupId + "\t" + coord.artifactId + "\t" + coord.version +
+                      "\t" + coord.kind + "\t" + (coord.classifier == null ? "" : coord.classifier) +
+                      "\t" + entry.getValue());
+        }
+
+        // write to a temp file and move it into place so that concurrent readers never see a
+        // partially written entry
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, dir.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Returns true if a resolution of {@code coords} which produced {@code jars} can be cached.
+     * Snapshot and version range resolutions may change without any local POM changing, so they
+     * are never cached, nor are resolutions which failed to resolve some artifacts.
+     */
+    public static boolean isCacheable (List<Coord> coords, Map<Coord,Path> jars) {
+        for (Coord coord : coords) if (isVolatile(coord.version)) return false;
+        for (Map.Entry<Coord,Path> entry : jars.entrySet()) {
+            if (entry.getValue() == null || isVolatile(entry.getKey().version)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isVolatile (String version) {
+        return version.endsWith("SNAPSHOT") || version.startsWith("[") || version.startsWith("(") ||
+            version.equals("LATEST") || version.equals("RELEASE");
+    }
+}
@@ -0,0 +1,47 @@
+package mfetcher;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * The result of {@link DependencyManager#resolveDependenciesStale}: a resolution answered from the
+ * local repository, and the online resolution that revalidates it in the background.
+ */
+public class Revalidation {
+
+    /** The resolved artifacts, as described by {@link DependencyManager#resolveDependencies}. */
+    public final Map<Coord,Path> artifacts;
+
+    /** True if {@link #artifacts} was resolved from the local repository alone, false if the local
+      * repository could not satisfy it, so it was resolved online (and is thus already fresh). */
+    public final boolean stale;
+
+    /** Completes with the result of resolving online, once that has fetched anything new into the
+      * local repository. */
+    public final CompletableFuture<Map<Coord,Path>> refreshed;
+
+    /** Completes with true if {@link #refreshed} differs from {@link #artifacts}, that is, if
+      * resolving again would produce a different classpath. */
+    public final CompletableFuture<Boolean> changed;
+
+    Revalidation (final Map<Coord,Path> artifacts, boolean stale,
+                  CompletableFuture<Map<Coord,Path>> refreshed) {
+        this.artifacts = artifacts;
+        this.stale = stale;
+        this.refreshed = refreshed;
+        this.changed = refreshed.thenApply(new Function<Map<Coord,Path>,Boolean>() {
+            public Boolean apply (Map<Coord,Path> fresh) {
+                // the classpath's order matters too
+                return !new ArrayList<Map.Entry<Coord,Path>>(fresh.entrySet()).equals(
+                    new ArrayList<Map.Entry<Coord,Path>>(artifacts.entrySet()));
+            }
+        });
+    }
+
+    @Override public String toString () {
+        return "Revalidation" + artifacts.keySet() + (stale ? " (stale)" : "");
+    }
+}
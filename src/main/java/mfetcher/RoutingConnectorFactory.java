@@ -0,0 +1,170 @@
+package mfetcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.spi.connector.ArtifactDownload;
+import org.eclipse.aether.spi.connector.ArtifactUpload;
+import org.eclipse.aether.spi.connector.MetadataDownload;
+import org.eclipse.aether.spi.connector.MetadataUpload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.locator.Service;
+import org.eclipse.aether.spi.locator.ServiceLocator;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.NoRepositoryConnectorException;
+
+/**
+ * Wraps the basic repository connector to avoid asking repositories for artifacts they don't
+ * have. Downloads of artifacts whose group is routed elsewhere (see
+ * {@link DependencyManager#addRoute}) fail immediately, as do downloads of artifacts which were
+ * recently not found in the repository (as recorded in the local repository's negative cache).
+ * Both are configured via session config properties.
+ */
+public class RoutingConnectorFactory implements RepositoryConnectorFactory, Service {
+
+    /** The session config property that holds the routes: a map from group prefix to the URLs of
+      * the repositories that may serve groups with that prefix. The prefix {@code *} matches any
+      * group that no other prefix matches. */
+    public static final String CONFIG_PROP_ROUTES = "mfetcher.routes";
+
+    /** The session config property that holds the {@link MissingCache}, if any. */
+    static final String CONFIG_PROP_MISSING = "mfetcher.missing";
+
+    /** The session config property that holds how long (in millis, a {@code Long}) an artifact
+      * recorded in the {@link MissingCache} is believed to be missing. */
+    static final String CONFIG_PROP_MISSING_TTL = "mfetcher.missing.ttl";
+
+    private final BasicRepositoryConnectorFactory basic = new BasicRepositoryConnectorFactory();
+
+    @Override public void initService (ServiceLocator locator) {
+        basic.initService(locator);
+    }
+
+    @Override public float getPriority () {
+        return basic.getPriority();
+    }
+
+    @Override public RepositoryConnector newInstance (RepositorySystemSession session,
+                                                      RemoteRepository repo)
+        throws NoRepositoryConnectorException {
+        RepositoryConnector conn = basic.newInstance(session, repo);
+        Map<?,?> routes = (Map<?,?>)session.getConfigProperties().get(CONFIG_PROP_ROUTES);
+        MissingCache missing = (MissingCache)session.getConfigProperties().get(CONFIG_PROP_MISSING);
+        Long missingTtl = (Long)session.getConfigProperties().get(CONFIG_PROP_MISSING_TTL);
+        // a forced refresh asks again about everything
+        if (RepositoryPolicy.UPDATE_POLICY_ALWAYS.equals(session.getUpdatePolicy()) ||
+            missingTtl == null || missingTtl <= 0) missing = null;
+        if ((routes == null || routes.isEmpty()) && missing == null) return conn;
+        return new RoutingConnector(conn, repo, routes, missing,
+                                    missing == null ? 0 : missingTtl);
+    }
+
+    /** Returns true if {@code routes} allow {@code repo} to serve artifacts in {@code groupId}. */
+    static boolean isRouted (Map<?,?> routes, String groupId, RemoteRepository repo) {
+        if (routes == null || routes.isEmpty()) return true;
+        // find the longest prefix that matches the group
+        Object match = null;
+        int matchLength = -1;
+        for (Map.Entry<?,?> entry : routes.entrySet()) {
+            String prefix = (String)entry.getKey();
+            if (prefix.length() > matchLength &&
+                (groupId.equals(prefix) || groupId.startsWith(prefix + "."))) {
+                match = entry.getValue();
+                matchLength = prefix.length();
+            }
+        }
+        if (match == null) match = routes.get("*");
+        if (match == null) return true;
+
+        Collection<?> urls = (Collection<?>)match;
+        if (urls.contains(repo.getUrl())) return true;
+        // the repository may be a mirror, in which case check what it mirrors
+        for (RemoteRepository mirrored : repo.getMirroredRepositories()) {
+            if (urls.contains(mirrored.getUrl())) return true;
+        }
+        return false;
+    }
+
+    protected static class RoutingConnector implements RepositoryConnector {
+        public final RepositoryConnector delegate;
+        public final RemoteRepository repo;
+        public final Map<?,?> routes;
+        public final MissingCache missing;
+        /** How long (in millis) to believe what {@link #missing} says. */
+        public final long missingTtl;
+
+        public RoutingConnector (RepositoryConnector delegate, RemoteRepository repo,
+                                 Map<?,?> routes, MissingCache missing, long missingTtl) {
+            this.delegate = delegate;
+            this.repo = repo;
+            this.routes = routes;
+            this.missing = missing;
+            this.missingTtl = missingTtl;
+        }
+
+        @Override public void get (Collection<? extends ArtifactDownload> artifactDownloads,
+                                   Collection<? extends MetadataDownload> metadataDownloads) {
+            List<ArtifactDownload> artifacts = new ArrayList<ArtifactDownload>();
+            for (ArtifactDownload download : safe(artifactDownloads)) {
+                Artifact art = download.getArtifact();
+                if (!isRouted(routes, art.getGroupId(), repo)) download.setException(
+                    new ArtifactNotFoundException(art, repo, "Not routed to " + repo.getUrl()));
+                else if (isMissing(art)) download.setException(new ArtifactNotFoundException(
+                    art, repo, "Recently not found in " + repo.getUrl(), true));
+                else artifacts.add(download);
+            }
+            List<MetadataDownload> metadata = new ArrayList<MetadataDownload>();
+            for (MetadataDownload download : safe(metadataDownloads)) {
+                String groupId = download.getMetadata().getGroupId();
+                if (groupId.length() > 0 && !isRouted(routes, groupId, repo)) download.setException(
+                    new MetadataNotFoundException(download.getMetadata(), repo,
+                                                  "Not routed to " + repo.getUrl()));
+                else metadata.add(download);
+            }
+
+            if (!artifacts.isEmpty() || !metadata.isEmpty()) delegate.get(artifacts, metadata);
+
+            if (missing != null) for (ArtifactDownload download : artifacts) {
+                Artifact art = download.getArtifact();
+                if (art.isSnapshot()) continue; // these come and go too quickly to remember
+                if (download.getException() instanceof ArtifactNotFoundException) {
+                    missing.missing(repo.getUrl(), art.toString());
+                } else if (download.getException() == null) {
+                    missing.found(repo.getUrl(), art.toString());
+                }
+            }
+        }
+
+        @Override public void put (Collection<? extends ArtifactUpload> artifactUploads,
+                                   Collection<? extends MetadataUpload> metadataUploads) {
+            delegate.put(artifactUploads, metadataUploads);
+        }
+
+        @Override public void close () {
+            delegate.close();
+        }
+
+        @Override public String toString () {
+            return "Routing(" + delegate + ")";
+        }
+
+        protected boolean isMissing (Artifact art) {
+            return missing != null && !art.isSnapshot() &&
+                missing.isMissing(repo.getUrl(), art.toString(), missingTtl);
+        }
+
+        private static <T> Collection<T> safe (Collection<T> items) {
+            return items == null ? Collections.<T>emptyList() : items;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers the {@code ETag} and {@code Last-Modified} validators (and the body) of responses to
+ * GETs of repository metadata, so that the next GET of the same URL can be made conditional, and
+ * a {@code 304 Not Modified} answered from the remembered body. Entries are kept in
+ * {@code .mfetcher/http} in the local repository, as a pair of files named for the SHA-1 of the
+ * URL: {@code <key>.body} and {@code <key>} (which holds the URL, the validators and the body's
+ * size).
+ */
+class ValidatorCache {
+
+    private static final String HEADER = "# mfetcher validators v1";
+
+    /** The validators (either of which may be null) and body of a previous response. */
+    public static class Entry {
+        public final String etag;
+        public final String lastModified;
+        public final Path body;
+
+        public Entry (String etag, String lastModified, Path body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+
+    private final Path dir;
+
+    public ValidatorCache (Path localRepo) {
+        this.dir = localRepo.resolve(".mfetcher").resolve("http");
+    }
+
+    /** Returns the remembered response for {@code url}, or null if we have none (or have lost its
+      * body). */
+    public Entry get (String url) {
+        String key = Digests.sha1Hex(url);
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(dir.resolve(key), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null; // no entry (or an unreadable one)
+        }
+        if (lines.size() != 5 || !HEADER.equals(lines.get(0)) || !url.equals(lines.get(1))) {
+            return null;
+        }
+        Path body = dir.resolve(key + ".body");
+        try {
+            if (Files.size(body) != Long.parseLong(lines.get(4))) return null;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+        return new Entry(emptyToNull(lines.get(2)), emptyToNull(lines.get(3)), body);
+    }
+
+    /** Remembers {@code body} as the response for {@code url}, if it has any validators. */
+    public void put (String url, String etag, String lastModified, Path body) throws IOException {
+        if (etag == null && lastModified == null) return;
+        String key = Digests.sha1Hex(url);
+        Files.createDirectories(dir);
+        // write the body before the entry which vouches for it, each atomically
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        try {
+            Files.copy(body, tmp, StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.size(tmp);
+            Files.move(tmp, dir.resolve(key + ".body"), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            Files.write(tmp, Arrays.asList(HEADER, url, etag == null ? "" : etag,
+                                           lastModified == null ? "" : lastModified,
+                                           String.valueOf(size)), StandardCharsets.UTF_8);
+            Files.move(tmp, dir.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Forgets the response for {@code url}, if we remembered one. */
+    public void remove (String url) throws IOException {
+        Files.deleteIfExists(dir.resolve(Digests.sha1Hex(url)));
+    }
+
+    private static String emptyToNull (String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
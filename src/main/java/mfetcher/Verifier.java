@@ -0,0 +1,281 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Verifies the files in a local repository against the SHA-1 checksums that were downloaded with
+ * them ({@code foo.jar.sha1} beside {@code foo.jar}). Files are hashed in parallel (on
+ * {@code mfetcher.verify.threads} threads, one per core by default) via memory mapped reads.
+ *
+ * <p>Each file found to be intact is noted, with its size and modification time, in a log in the
+ * local repository ({@code .mfetcher/verified.log}, an {@link AppendLog}), so that it need not be
+ * hashed again until it changes. Each line is {@code <size> TAB <mtime> TAB <sha1> TAB <path>},
+ * the path being relative to the local repository. Damage which leaves a file's size and
+ * modification time alone (a bad disk block, say) is only found by rehashing.</p>
+ */
+public class Verifier {
+
+    /** The outcome of a verification. Each file verified appears in exactly one of
+      * {@link #verified}, {@link #unchanged}, {@link #corrupt} and {@link #unchecked}. */
+    public static class Report {
+        /** Files which were hashed and match their checksums. */
+        public final List<Path> verified = new ArrayList<Path>();
+        /** Files which matched their checksums when last hashed, and have not changed since. */
+        public final List<Path> unchanged = new ArrayList<Path>();
+        /** Files which do not match their checksums (or could not be read). */
+        public final List<Path> corrupt = new ArrayList<Path>();
+        /** Files which have no checksum to compare against. */
+        public final List<Path> unchecked = new ArrayList<Path>();
+        /** Corrupt files which were deleted and downloaded again, and now match their checksums.
+          * (Only {@link DependencyManager#verify} and co. re-fetch.) */
+        public final List<Path> refetched = new ArrayList<Path>();
+
+        /** Returns true if no file was found to be corrupt, or all that were have been replaced. */
+        public boolean isIntact () {
+            return refetched.containsAll(corrupt);
+        }
+
+        @Override public String toString () {
+            return "Verified " + verified.size() + ", unchanged " + unchanged.size() +
+                ", corrupt " + corrupt.size() + ", unchecked " + unchecked.size() +
+                ", refetched " + refetched.size();
+        }
+    }
+
+    protected enum Status { VERIFIED, UNCHANGED, CORRUPT, UNCHECKED }
+
+    /** The status of one file, and if it was verified, its {@code size TAB mtime TAB sha1}. */
+    protected static class Check {
+        public final Status status;
+        public final String stamp;
+
+        public Check (Status status, String stamp) {
+            this.status = status;
+            this.stamp = stamp;
+        }
+    }
+
+    private static final String FILE = "verified.log";
+    private static final String PROP_VERIFY_THREADS = "mfetcher.verify.threads";
+
+    private static final ConcurrentMap<Path,Verifier> verifiers =
+        new ConcurrentHashMap<Path,Verifier>();
+
+    private final Path localRepo;
+    private final AppendLog log;
+    private Map<String,String> verified; // path -> size TAB mtime TAB sha1, lazily loaded
+
+    /** Returns the verifier for the local repository at {@code localRepo}, which is shared by all
+      * dependency managers in this process. */
+    public static Verifier forRepo (Path localRepo) {
+        Path repo = localRepo.toAbsolutePath().normalize();
+        Verifier verifier = verifiers.get(repo);
+        if (verifier == null) {
+            Verifier created = new Verifier(repo);
+            verifier = verifiers.putIfAbsent(repo, created);
+            if (verifier == null) verifier = created;
+        }
+        return verifier;
+    }
+
+    protected Verifier (Path localRepo) {
+        this.localRepo = localRepo;
+        this.log = new AppendLog(localRepo.resolve(".mfetcher").resolve(FILE));
+    }
+
+    /**
+     * Verifies {@code files} (which should be in our local repository). Files which have not
+     * changed since they were last found intact are not hashed again, unless {@code rehash}.
+     */
+    public Report verify (Collection<Path> files, final boolean rehash) {
+        List<Path> paths = new ArrayList<Path>(files.size());
+        List<CompletableFuture<Check>> checks = new ArrayList<CompletableFuture<Check>>();
+        for (final Path file : files) {
+            paths.add(file);
+            checks.add(CompletableFuture.supplyAsync(new Supplier<Check>() {
+                public Check get () {
+                    return check(file, rehash);
+                }
+            }, POOL));
+        }
+
+        Report report = new Report();
+        List<String> lines = new ArrayList<String>();
+        for (int ii = 0, ll = paths.size(); ii < ll; ii++) {
+            Path file = paths.get(ii);
+            Check check = checks.get(ii).join();
+            switch (check.status) {
+            case VERIFIED:
+                report.verified.add(file);
+                lines.add(check.stamp + "\t" + key(file));
+                break;
+            case UNCHANGED: report.unchanged.add(file); break;
+            case CORRUPT: report.corrupt.add(file); break;
+            case UNCHECKED: report.unchecked.add(file); break;
+            }
+        }
+        if (!lines.isEmpty()) record(lines);
+        if (DependencyManager.verbose) System.out.println(report);
+        return report;
+    }
+
+    /** Returns every artifact (and POM) in our local repository, omitting checksums, signatures,
+      * metadata, partial downloads and the like. */
+    public List<Path> artifacts () throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        if (!Files.isDirectory(localRepo)) return files;
+        Files.walkFileTree(localRepo, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult preVisitDirectory (
+                Path dir, BasicFileAttributes attrs) {
+                return dir.getFileName().toString().startsWith(".") && !dir.equals(localRepo) ?
+                    FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+            @Override public FileVisitResult visitFile (Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isArtifact(file.getFileName().toString())) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Returns the coord of the artifact at {@code file} in the local repository at
+     * {@code localRepo}, as derived from its path, or null if the path does not follow the
+     * repository layout (or names a timestamped snapshot, whose coord cannot be derived).
+     */
+    public static Coord coordOf (Path localRepo, Path file) {
+        Path rel = localRepo.toAbsolutePath().normalize().relativize(
+            file.toAbsolutePath().normalize());
+        int count = rel.getNameCount();
+        if (count < 4 || rel.startsWith("..")) return null;
+        String artifactId = rel.getName(count-3).toString();
+        String version = rel.getName(count-2).toString();
+        StringBuilder groupId = new StringBuilder();
+        for (int ii = 0; ii < count-3; ii++) {
+            if (ii > 0) groupId.append('.');
+            groupId.append(rel.getName(ii));
+        }
+        String name = rel.getFileName().toString(), prefix = artifactId + "-" + version;
+        if (!name.startsWith(prefix)) return null;
+        String rest = name.substring(prefix.length()), classifier = null;
+        if (rest.startsWith("-")) {
+            int dot = rest.indexOf('.');
+            if (dot < 0) return null;
+            classifier = rest.substring(1, dot);
+            rest = rest.substring(dot);
+        }
+        if (!rest.startsWith(".") || rest.length() < 2) return null;
+        return new Coord(groupId.toString(), artifactId, version, rest.substring(1), classifier);
+    }
+
+    /** Returns the SHA-1 sidecar of {@code file}. */
+    public static Path checksumFile (Path file) {
+        return file.resolveSibling(file.getFileName() + ".sha1");
+    }
+
+    protected Check check (Path file, boolean rehash) {
+        try {
+            String stamp = Files.size(file) + "\t" + Files.getLastModifiedTime(file).toMillis();
+            String known = rehash ? null : known(key(file));
+            if (known != null && known.startsWith(stamp + "\t")) return new Check(Status.UNCHANGED, null);
+
+            String expect;
+            try {
+                expect = readChecksum(checksumFile(file));
+            } catch (NoSuchFileException e) {
+                return new Check(Status.UNCHECKED, null);
+            }
+            String actual = Digests.sha1Hex(file);
+            if (!actual.equals(expect)) {
+                if (DependencyManager.verbose) System.out.println(
+                    "Corrupt " + file + ": sha1 " + actual + " != " + expect);
+                return new Check(Status.CORRUPT, null);
+            }
+            return new Check(Status.VERIFIED, stamp + "\t" + actual);
+        } catch (IOException e) {
+            if (DependencyManager.verbose) System.out.println("Failed to verify " + file + ": " + e);
+            return new Check(Status.CORRUPT, null);
+        }
+    }
+
+    protected synchronized String known (String key) {
+        return load().get(key);
+    }
+
+    protected synchronized void record (List<String> lines) {
+        Map<String,String> verified = load();
+        for (String line : lines) {
+            int tab = line.lastIndexOf('\t');
+            verified.put(line.substring(tab+1), line.substring(0, tab));
+        }
+        log.append(lines);
+    }
+
+    protected Map<String,String> load () {
+        if (verified != null) return verified;
+        verified = new HashMap<String,String>();
+        List<String> lines = log.read();
+        for (String line : lines) {
+            String[] bits = line.split("\t", 4);
+            if (bits.length != 4 || bits[2].length() != 40) continue; // a torn write, perhaps
+            verified.put(bits[3], bits[0] + "\t" + bits[1] + "\t" + bits[2]);
+        }
+        log.compact(lines.size(), verified);
+        return verified;
+    }
+
+    private String key (Path file) {
+        Path abs = file.toAbsolutePath().normalize();
+        return (abs.startsWith(localRepo) ? localRepo.relativize(abs) : abs).toString();
+    }
+
+    private static boolean isArtifact (String name) {
+        if (name.startsWith("maven-metadata") || name.startsWith("_") ||
+            name.equals("resolver-status.properties")) return false;
+        for (String suffix : NOT_ARTIFACTS) if (name.endsWith(suffix)) return false;
+        return true;
+    }
+
+    /** Reads a checksum file, which holds the hex digest, possibly followed by a file name. */
+    private static String readChecksum (Path file) throws IOException {
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        int end = 0;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) end++;
+        return text.substring(0, end).toLowerCase();
+    }
+
+    private static final String[] NOT_ARTIFACTS = {
+        ".sha1", ".md5", ".sha256", ".sha512", ".asc", ".lastUpdated", ".part", ".chunks",
+        ".tmp" };
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+        Integer.getInteger(PROP_VERIFY_THREADS, Runtime.getRuntime().availableProcessors()),
+        new ThreadFactory() {
+            public Thread newThread (Runnable task) {
+                Thread thread = new Thread(task, "mfetcher-verify");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+}
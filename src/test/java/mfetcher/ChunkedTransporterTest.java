@@ -0,0 +1,167 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.internal.impl.SimpleLocalRepositoryManagerFactory;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ChunkedTransporterTest {
+
+    public final Coord BIG = new Coord("com.example", "big", "1.0", "jar");
+    public final String JAR = "/com/example/big/1.0/big-1.0.jar";
+    public final int SIZE = 3*1024*1024 + 12345;
+
+    protected RepoServer server;
+    protected final AtomicBoolean corrupted = new AtomicBoolean();
+
+    @Before
+    public void setUp () throws IOException {
+        server = new RepoServer();
+        byte[] jar = new byte[SIZE];
+        new Random(42).nextBytes(jar);
+        server.add(JAR, jar);
+        server.add(JAR.replace(".jar", ".pom"), RepoServer.pom("big", ""));
+        // an app with a handful of small dependencies
+        StringBuilder deps = new StringBuilder("<dependencies>");
+        for (int ii = 0; ii < 6; ii++) {
+            deps.append("<dependency><groupId>com.example</groupId><artifactId>lib").append(ii).
+                append("</artifactId><version>1.0</version></dependency>");
+            String path = "/com/example/lib" + ii + "/1.0/lib" + ii + "-1.0";
+            server.add(path + ".pom", RepoServer.pom("lib" + ii, ""));
+            server.add(path + ".jar", new byte[1024]);
+        }
+        server.add("/com/example/app/1.0/app-1.0.pom",
+                   RepoServer.pom("app", deps.append("</dependencies>")));
+        server.add("/com/example/app/1.0/app-1.0.jar", new byte[1024]);
+        System.setProperty(ChunkedTransporterFactory.PROP_CHUNKED_THRESHOLD, "262144");
+    }
+
+    @After
+    public void tearDown () {
+        System.clearProperty(ChunkedTransporterFactory.PROP_CHUNKED_THRESHOLD);
+        System.clearProperty(ChunkedTransporterFactory.PROP_PER_HOST);
+        System.clearProperty("mfetcher.download.threads");
+        server.stop();
+    }
+
+    @Test
+    public void testChunked () throws IOException {
+        Map<Coord,Path> paths = resolve(Files.createTempDirectory(Paths.get("target"),
+                                                                  "test-chunked"), false);
+        assertArrayEquals(server.get(JAR), Files.readAllBytes(paths.get(BIG)));
+        // the first chunk plus three more, and nothing fetched twice
+        assertEquals(4, server.ranges(JAR));
+        assertEquals(SIZE, server.served(JAR));
+    }
+
+    @Test
+    public void testResume () throws IOException {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-resume");
+        server.failing.set(true);
+        assertNull(resolve(repo, false).get(BIG));
+
+        server.failing.set(false);
+        server.resetCounts();
+        Map<Coord,Path> paths = resolve(repo, true);
+        assertArrayEquals(server.get(JAR), Files.readAllBytes(paths.get(BIG)));
+        // only what was not downloaded the first time was fetched the second time
+        assertTrue("Served " + server.served(JAR), server.served(JAR) < SIZE);
+        assertFalse(Files.exists(paths.get(BIG).resolveSibling("big-1.0.jar.part.chunks")));
+    }
+
+    @Test
+    public void testResumeChanged () throws IOException {
+        // the file grows, or shrinks, between the failed download and the resumption
+        for (int size : new int[] { SIZE + 300000, SIZE - 300000 }) {
+            Path repo = Files.createTempDirectory(Paths.get("target"), "test-changed");
+            server.failing.set(true);
+            assertNull(resolve(repo, false).get(BIG));
+
+            server.failing.set(false);
+            byte[] changed = new byte[size];
+            new Random(size).nextBytes(changed);
+            server.add(JAR, changed);
+            Map<Coord,Path> paths = resolve(repo, true);
+            assertNotNull(paths.get(BIG));
+            assertArrayEquals(changed, Files.readAllBytes(paths.get(BIG)));
+            assertFalse(Files.exists(paths.get(BIG).resolveSibling("big-1.0.jar.part.chunks")));
+        }
+    }
+
+    @Test
+    public void testHostLimit () throws IOException {
+        System.setProperty(ChunkedTransporterFactory.PROP_PER_HOST, "2");
+        System.setProperty("mfetcher.download.threads", "8");
+        server.delay = 20;
+        Map<Coord,Path> paths = resolve(Files.createTempDirectory(Paths.get("target"),
+                                                                  "test-hostlimit"), false,
+                                        new Coord("com.example", "app", "1.0", "jar"));
+        assertEquals(7, paths.size());
+        assertFalse(paths.containsValue(null));
+        assertTrue("Max concurrent " + server.maxActive.get(), server.maxActive.get() <= 2);
+        // the small jars were left to the HTTP transporter
+        assertEquals(0, server.ranges("/com/example/lib0/1.0/lib0-1.0.jar"));
+    }
+
+    @Test
+    public void testSessionConfig () throws Exception {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-config");
+        DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+        session.setLocalRepositoryManager(new SimpleLocalRepositoryManagerFactory().newInstance(
+            session, new LocalRepository(repo.toFile())));
+        session.setConfigProperty(ConfigurationProperties.USER_AGENT, "mfetcher-test");
+        session.setConfigProperty(ConfigurationProperties.HTTP_HEADERS + ".test",
+                                  Collections.singletonMap("X-Token", "secret"));
+        server.addMetadata("big", "1.0");
+
+        RemoteRepository remote = new RemoteRepository.Builder(
+            "test", "default", server.repos().get(0)).build();
+        Transporter transporter = new ChunkedTransporterFactory().newInstance(session, remote);
+        try {
+            // both a chunked download and a conditional metadata request
+            String[] paths = { JAR, "/com/example/big/maven-metadata.xml" };
+            for (String path : paths) {
+                transporter.get(new GetTask(URI.create(path.substring(1))).setDataFile(
+                    repo.resolve(path.substring(path.lastIndexOf('/') + 1)).toFile()));
+                assertEquals("secret", server.request(path).getFirst("X-Token"));
+                assertEquals("mfetcher-test", server.request(path).getFirst("User-Agent"));
+            }
+            assertEquals(4, server.ranges(JAR));
+        } finally {
+            transporter.close();
+        }
+    }
+
+    protected Map<Coord,Path> resolve (Path repo, boolean refresh) {
+        return resolve(repo, refresh, BIG);
+    }
+
+    protected Map<Coord,Path> resolve (Path repo, boolean refresh, Coord root) {
+        DependencyManager dmgr = new DependencyManager(repo, server.repos(), refresh, false) {
+            @Override protected void onTransferEvent (String method, TransferEvent event) {
+                if (method.equals("transferCorrupted")) corrupted.set(true);
+            }
+        };
+        Map<Coord,Path> paths = dmgr.resolveDependencies(Arrays.asList(root));
+        assertFalse("Checksum mismatch", corrupted.get());
+        return paths;
+    }
+}
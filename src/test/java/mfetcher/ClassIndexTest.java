@@ -0,0 +1,105 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ClassIndexTest {
+
+    @Test
+    public void testIndex () throws Exception {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-classindex");
+        Path junit = Paths.get(Assert.class.getProtectionDomain().getCodeSource().getLocation().
+                               toURI());
+        Map<Coord,Path> classpath = new LinkedHashMap<Coord,Path>();
+        classpath.put(new Coord("com.example", "one", "1.0", "jar"),
+                      jar(repo.resolve("one.jar"), "com/example/shared.txt", "one"));
+        classpath.put(new Coord("junit", "junit", "4.11", "jar"), junit);
+        classpath.put(new Coord("com.example", "two", "1.0", "jar"),
+                      jar(repo.resolve("two.jar"), "com/example/shared.txt", "two"));
+
+        ClassIndex index = ClassIndex.forClasspath(repo, classpath);
+        assertArrayEquals(new int[] { 1 }, index.jarsFor("org/junit/"));
+        assertArrayEquals(new int[] { 0, 2 }, index.jarsFor("com/example/"));
+        assertArrayEquals(new int[0], index.jarsFor("org/nonesuch/"));
+        // the second time around, the saved index is used
+        assertEquals(index.jars, ClassIndex.forClasspath(repo, classpath).jars);
+
+        try (IndexedClassLoader loader = index.newClassLoader(null)) {
+            Class<?> assertc = loader.loadClass("org.junit.Assert");
+            assertSame(loader, assertc.getClassLoader());
+            assertNotSame(Assert.class, assertc);
+            // the package is defined once, for all of its classes
+            assertEquals("org.junit", assertc.getPackage().getName());
+            assertSame(assertc.getPackage(), loader.loadClass("org.junit.Test").getPackage());
+            try {
+                loader.loadClass("org.junit.NoSuchClass");
+                fail();
+            } catch (ClassNotFoundException e) {
+                // expected
+            }
+
+            // the first jar on the classpath wins, but all are listed
+            assertEquals("one", read(loader.getResource("com/example/shared.txt")));
+            List<URL> urls = Collections.list(loader.getResources("com/example/shared.txt"));
+            assertEquals(2, urls.size());
+            assertEquals("two", read(urls.get(1)));
+            assertNull(loader.getResource("com/example/missing.txt"));
+        }
+    }
+
+    @Test
+    public void testUnreadableJar () throws Exception {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-unreadable");
+        Path junit = Paths.get(Assert.class.getProtectionDomain().getCodeSource().getLocation().
+                               toURI());
+        Path copy = Files.copy(junit, repo.resolve("copy.jar"));
+        Map<Coord,Path> classpath = new LinkedHashMap<Coord,Path>();
+        classpath.put(new Coord("com.example", "copy", "1.0", "jar"), copy);
+        classpath.put(new Coord("junit", "junit", "4.11", "jar"), junit);
+        ClassIndex index = ClassIndex.forClasspath(repo, classpath);
+
+        // the first jar with the class is ruined after indexing; the second supplies it
+        Files.write(copy, new byte[] { 1, 2, 3 });
+        try (IndexedClassLoader loader = index.newClassLoader(null)) {
+            Class<?> assertc = loader.loadClass("org.junit.Assert");
+            assertEquals(junit.toUri().toURL(),
+                         assertc.getProtectionDomain().getCodeSource().getLocation());
+        }
+    }
+
+    private static Path jar (Path file, String name, String data) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             JarOutputStream jout = new JarOutputStream(out)) {
+            jout.putNextEntry(new ZipEntry(name));
+            jout.write(data.getBytes(StandardCharsets.UTF_8));
+            jout.closeEntry();
+        }
+        return file;
+    }
+
+    private static String read (URL url) throws IOException {
+        // don't let the JDK cache (and hold open) the jar
+        URLConnection conn = url.openConnection();
+        conn.setUseCaches(false);
+        try (InputStream in = conn.getInputStream()) {
+            byte[] bytes = new byte[64];
+            int read = in.read(bytes);
+            return new String(bytes, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+}
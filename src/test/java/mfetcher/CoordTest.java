@@ -0,0 +1,54 @@
+package mfetcher;
+
+import java.util.Arrays;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class CoordTest {
+
+    @Test
+    public void testParse () {
+        Coord junit = Coord.parse("junit:junit:4.11");
+        assertEquals(new Coord("junit", "junit", "4.11", "jar"), junit);
+        assertEquals(junit, Coord.parse(junit.toString()));
+
+        Coord natives = Coord.parse("org.lwjgl:lwjgl:3.3.1:jar:natives-linux");
+        assertEquals("natives-linux", natives.classifier);
+        assertEquals(natives, Coord.parse(natives.toString()));
+
+        for (String bad : new String[] { "junit", "junit:junit", "junit::4.11", "junit:junit:4.11:",
+                                         "a:b:c:d:e:f" }) {
+            try {
+                Coord.parse(bad);
+                fail("Parsed " + bad);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testEquality () {
+        Coord a = new Coord("com.example", "widget", "1.0", "jar");
+        Coord swapped = new Coord("widget", "com.example", "1.0", "jar");
+        assertFalse(a.equals(swapped));
+        assertFalse(a.hashCode() == swapped.hashCode());
+
+        Coord excl = a.withExclusions(Coord.parseExclusions("org.foo:bar, org.baz:*"));
+        assertFalse(a.equals(excl));
+        assertFalse(a.hashCode() == excl.hashCode());
+        // exclusions are a set, so their order doesn't matter
+        assertEquals(excl, a.withExclusions(Arrays.asList(new Coord.Exclusion("org.baz", "*"),
+                                                          new Coord.Exclusion("org.foo", "bar"))));
+        // an empty classifier is no classifier
+        assertEquals(a, new Coord("com.example", "widget", "1.0", "jar", ""));
+    }
+
+    @Test
+    public void testIntern () {
+        Coord a = new Coord("com.example", "widget", "1.0", "jar").intern();
+        Coord b = new Coord("com.example", "widget", "1.0", "jar");
+        assertNotSame(a, b);
+        assertSame(a, b.intern());
+    }
+}
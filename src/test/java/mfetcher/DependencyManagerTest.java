@@ -1,14 +1,31 @@
 package mfetcher;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RequestTrace;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.DependencyRequest;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -23,6 +40,11 @@ public class DependencyManagerTest {
     public final Coord HTMLP = new Coord("org.htmlparser", "html-lexer", "2.1", "jar");
     public final Coord ASM5 = new Coord("org.ow2.asm", "asm", "5.0.1", "jar");
 
+    // served by a RepoServer (see bigServer)
+    public final Coord BIG = new Coord("com.example", "big", "1.0", "jar");
+    public final Coord BIG_RANGE = new Coord("com.example", "big", "[1.0,2.0)", "jar");
+    public final String BIG_JAR = "/com/example/big/1.0/big-1.0.jar";
+
     @Test
     public void testFetch () throws IOException {
         Path tmp = Paths.get("target/test-repo");
@@ -43,6 +65,23 @@ public class DependencyManagerTest {
         }
     }
 
+    @Test
+    public void testDirectoryRepo () throws IOException {
+        // populate one local repository from central, then use it as a mirror for another
+        Path mirror = Paths.get("target/test-mirror"), local = Paths.get("target/test-linked");
+        Map<Coord,Path> remote = new DependencyManager(mirror, null, false, false).
+            resolveDependencies(Arrays.asList(JUNIT));
+        Map<Coord,Path> linked = new DependencyManager(
+            local, Arrays.asList(mirror.toString()), true, false).
+            resolveDependencies(Arrays.asList(JUNIT));
+        assertEquals(remote.keySet(), linked.keySet());
+        for (Map.Entry<Coord,Path> entry : linked.entrySet()) {
+            assertTrue(entry.getValue().startsWith(local.toAbsolutePath()));
+            assertArrayEquals(Files.readAllBytes(remote.get(entry.getKey())),
+                              Files.readAllBytes(entry.getValue()));
+        }
+    }
+
     @Test
     public void testInvalidArtifact () {
         DependencyManager dmgr = new DependencyManager(m2, null, false, false);
@@ -55,6 +94,509 @@ public class DependencyManagerTest {
         assertNotNull(paths.get(ASM5));
     }
 
+    @Test
+    public void testMissingAndRoutes () throws IOException {
+        final List<String> fetched = new ArrayList<String>();
+        Path tmp = Files.createTempDirectory(Paths.get("target"), "test-routes");
+        for (int ii = 0; ii < 2; ii++) {
+            DependencyManager dmgr = new DependencyManager(tmp, null, false, false) {
+                @Override protected void onTransferEvent (String method, TransferEvent event) {
+                    if (method.equals("transferInitiated")) {
+                        synchronized (fetched) { fetched.add(event.getResource().getResourceName()); }
+                    }
+                }
+            };
+            dmgr.addRoute("junit", "target/no-such-repo");
+            Map<Coord,Path> paths = dmgr.resolveDependencies(Arrays.asList(JUNIT, HTMLP, ASM5));
+            assertNull(paths.get(JUNIT)); // routed to nowhere
+            assertNull(paths.get(HTMLP));
+            assertNotNull(paths.get(ASM5));
+        }
+        // html-lexer's jar was asked for only once, and junit never
+        int lexers = 0;
+        for (String name : fetched) {
+            assertFalse(name, name.startsWith("junit"));
+            if (name.endsWith("html-lexer-2.1.jar")) lexers++;
+        }
+        assertEquals(1, lexers);
+    }
+
+    @Test
+    public void testAsync () throws Exception {
+        DependencyManager dmgr = new DependencyManager(m2, null, false, false);
+        CompletableFuture<Map<Coord,Path>> junit = dmgr.resolveDependenciesAsync(Arrays.asList(JUNIT));
+        CompletableFuture<Map<Coord,Path>> both = dmgr.resolveDependenciesAsync(
+            Arrays.asList(JUNIT, ASM5));
+        assertNotNull(junit.get().get(JUNIT));
+        assertEquals(junit.get().get(JUNIT), both.get().get(JUNIT));
+        assertNotNull(both.get().get(ASM5));
+    }
+
+    @Test
+    public void testBatch () {
+        DependencyManager dmgr = new DependencyManager(m2, null, false, false);
+        Map<String,List<Coord>> roots = new LinkedHashMap<String,List<Coord>>();
+        roots.put("junit", Arrays.asList(JUNIT));
+        roots.put("both", Arrays.asList(JUNIT, ASM5));
+        Map<String,Map<Coord,Path>> results = dmgr.resolveBatch(roots);
+        assertEquals(dmgr.resolveDependencies(Arrays.asList(JUNIT)), results.get("junit"));
+        assertEquals(dmgr.resolveDependencies(Arrays.asList(JUNIT, ASM5)), results.get("both"));
+    }
+
+    @Test
+    public void testUpdate () {
+        DependencyManager dmgr = new DependencyManager(m2, null, false, false);
+        Resolution junit = dmgr.resolveGraph(Arrays.asList(JUNIT));
+        assertEquals(dmgr.resolveDependencies(Arrays.asList(JUNIT)), junit.artifacts);
+        Resolution both = dmgr.update(junit, Arrays.asList(ASM5), Collections.<Coord>emptyList());
+        assertEquals(dmgr.resolveDependencies(Arrays.asList(JUNIT, ASM5)), both.artifacts);
+        Resolution asm = dmgr.update(both, Collections.<Coord>emptyList(), Arrays.asList(JUNIT));
+        assertEquals(dmgr.resolveDependencies(Arrays.asList(ASM5)), asm.artifacts);
+    }
+
+    @Test
+    public void testSmartRefresh () throws IOException {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-smart");
+        RepoServer server = bigServer();
+        AtomicInteger corrupted = new AtomicInteger();
+        try {
+            for (int ii = 0; ii < 2; ii++) {
+                Map<Coord,Path> paths = smartManager(repo, server, corrupted).
+                    resolveDependencies(Arrays.asList(BIG_RANGE));
+                assertArrayEquals(server.get(BIG_JAR), Files.readAllBytes(paths.get(BIG)));
+            }
+            // the metadata was checked again, but not downloaded again, and the jar was left alone
+            assertEquals(2, server.notModified.get());
+            assertEquals(server.get(BIG_JAR).length, server.served(BIG_JAR));
+            assertEquals(0, corrupted.get());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStaleWhileRevalidate () throws Exception {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-stale");
+        RepoServer server = bigServer();
+        AtomicInteger corrupted = new AtomicInteger();
+        try {
+            // nothing local, so the first resolution is online
+            Revalidation first = smartManager(repo, server, corrupted).
+                resolveDependenciesStale(Arrays.asList(BIG_RANGE));
+            assertFalse(first.stale);
+            assertFalse(first.changed.get());
+
+            // a new version is published: we're told about it, but get the old one until next time
+            String path = "/com/example/big/1.1/big-1.1";
+            server.add(path + ".pom", server.get(BIG_JAR.replace(".jar", ".pom")));
+            server.add(path + ".jar", new byte[1024]);
+            server.addMetadata("big", "1.0", "1.1");
+            Coord big11 = new Coord("com.example", "big", "1.1", "jar");
+            Revalidation second = smartManager(repo, server, corrupted).
+                resolveDependenciesStale(Arrays.asList(BIG_RANGE));
+            assertTrue(second.stale);
+            assertEquals(first.artifacts, second.artifacts);
+            assertTrue(second.changed.get());
+            assertTrue(second.refreshed.get().containsKey(big11));
+
+            Revalidation third = smartManager(repo, server, corrupted).
+                resolveDependenciesStale(Arrays.asList(BIG_RANGE));
+            assertTrue(third.stale);
+            assertTrue(third.artifacts.containsKey(big11));
+            assertFalse(third.changed.get());
+            // the new metadata was checked against its new checksum, not the one kept from before
+            assertEquals(0, corrupted.get());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStaleFromCentral () throws Exception {
+        // artifacts fetched from central are noted as such in the local repository, so the
+        // offline resolution must be made against a repository with central's id to use them
+        Path tmp = Files.createTempDirectory(Paths.get("target"), "test-stale-central");
+        System.setProperty("mfetcher.result.cache", "false");
+        try {
+            Revalidation first = new DependencyManager(tmp, null, false, false).
+                resolveDependenciesStale(Arrays.asList(JUNIT));
+            assertFalse(first.stale);
+            Revalidation second = new DependencyManager(tmp, null, false, false).
+                resolveDependenciesStale(Arrays.asList(JUNIT));
+            assertTrue(second.stale);
+            assertEquals(first.artifacts, second.artifacts);
+            assertFalse(second.changed.get());
+        } finally {
+            System.clearProperty("mfetcher.result.cache");
+        }
+    }
+
+    @Test
+    public void testVerify () throws IOException {
+        Path tmp = Files.createTempDirectory(Paths.get("target"), "test-verify");
+        DependencyManager dmgr = new DependencyManager(tmp, null, false, false);
+        Map<Coord,Path> paths = dmgr.resolveDependencies(Arrays.asList(JUNIT));
+        Verifier.Report first = dmgr.verify(paths);
+        assertEquals(new ArrayList<Path>(paths.values()), first.verified);
+        // the second time around, nothing has changed so nothing need be hashed
+        assertEquals(first.verified, dmgr.verify(paths).unchanged);
+
+        Path jar = paths.get(JUNIT);
+        byte[] intact = Files.readAllBytes(jar), damaged = intact.clone();
+        damaged[damaged.length/2] ^= 1;
+        Files.write(jar, damaged);
+        Verifier.Report second = dmgr.verify(paths);
+        assertEquals(Arrays.asList(jar), second.corrupt);
+        assertEquals(Arrays.asList(jar), second.refetched);
+        assertTrue(second.isIntact());
+        assertArrayEquals(intact, Files.readAllBytes(jar));
+
+        Verifier.Report all = dmgr.verifyLocalRepository(true);
+        assertTrue(all.corrupt.isEmpty());
+        assertTrue(all.verified.containsAll(paths.values()));
+        assertEquals(JUNIT, Verifier.coordOf(tmp, jar));
+    }
+
+    @Test
+    public void testCompact () throws Exception {
+        Path tmp = Files.createTempDirectory(Paths.get("target"), "test-compact");
+        DependencyManager dmgr = new DependencyManager(tmp, null, false, false);
+        Map<Coord,Path> asm = dmgr.resolveDependencies(Arrays.asList(ASM5));
+        Thread.sleep(10);
+        Map<Coord,Path> junit = dmgr.resolveDependencies(Arrays.asList(JUNIT));
+
+        // evicting a single byte evicts the least recently used version, one of asm's
+        List<Path> evicted = dmgr.compactLocalRepository(size(tmp) - 1);
+        assertEquals(1, evicted.size());
+        assertTrue(evicted.get(0).startsWith(tmp.toAbsolutePath().resolve("org/ow2")));
+        for (Path jar : junit.values()) assertTrue(Files.exists(jar));
+
+        // evicting everything leaves nothing, which is downloaded again when needed
+        assertFalse(dmgr.compactLocalRepository(0).isEmpty());
+        for (Path jar : asm.values()) assertFalse(Files.exists(jar));
+        for (Path jar : dmgr.resolveDependencies(Arrays.asList(JUNIT)).values()) {
+            assertTrue(Files.exists(jar));
+        }
+    }
+
+    @Test
+    public void testCompactInUse () throws Exception {
+        Path tmp = Files.createTempDirectory(Paths.get("target"), "test-inuse");
+        DependencyManager dmgr = new DependencyManager(tmp, null, false, false);
+        Map<Coord,Path> asm = dmgr.resolveDependencies(Arrays.asList(ASM5));
+        Map<Coord,Path> junit = dmgr.resolveDependencies(Arrays.asList(JUNIT));
+        List<AccessLog.Version> versions = AccessLog.forRepo(tmp).versions();
+        Thread.sleep(10);
+
+        // once listed, junit is used again by this process, and asm by another
+        dmgr.resolveDependencies(Arrays.asList(JUNIT));
+        Files.write(tmp.resolve(".mfetcher/access.log"),
+                    (System.currentTimeMillis() + "\torg/ow2/asm/asm/5.0.1\n").getBytes("UTF-8"),
+                    StandardOpenOption.APPEND);
+        List<Path> used = new ArrayList<Path>();
+        for (Path jar : asm.values()) used.add(jar.getParent());
+        for (Path jar : junit.values()) used.add(jar.getParent());
+        for (AccessLog.Version version : versions) {
+            // everything else (the parent POMs) is evicted
+            assertEquals(version.toString(), !used.contains(version.dir), dmgr.evict(version));
+        }
+        for (Path jar : asm.values()) assertTrue(Files.exists(jar));
+        for (Path jar : junit.values()) assertTrue(Files.exists(jar));
+    }
+
+    @Test
+    public void testParentChanged () throws IOException {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-parent");
+        Coord app = new Coord("com.example", "app", "1.0", "jar");
+        Coord lib0 = new Coord("com.example", "lib0", "1.0", "jar");
+        Coord lib1 = new Coord("com.example", "lib1", "1.0", "jar");
+        RepoServer server = new RepoServer();
+        try {
+            server.add("/com/example/parent/1.0/parent-1.0.pom", parentPom("lib0"));
+            server.add("/com/example/app/1.0/app-1.0.pom", RepoServer.pom(
+                "app", "<parent><groupId>com.example</groupId><artifactId>parent</artifactId>" +
+                "<version>1.0</version></parent>"));
+            server.add("/com/example/app/1.0/app-1.0.jar", new byte[1024]);
+            for (String lib : new String[] { "lib0", "lib1" }) {
+                String path = "/com/example/" + lib + "/1.0/" + lib + "-1.0";
+                server.add(path + ".pom", RepoServer.pom(lib, ""));
+                server.add(path + ".jar", new byte[1024]);
+            }
+
+            // read the descriptors without caching the result, then cache a result built from them
+            System.setProperty("mfetcher.result.cache", "false");
+            try {
+                assertNotNull(new DependencyManager(repo, server.repos(), false, false).
+                              resolveDependencies(Arrays.asList(app)).get(lib0));
+            } finally {
+                System.clearProperty("mfetcher.result.cache");
+            }
+            assertNotNull(new DependencyManager(repo, server.repos(), false, false).
+                          resolveDependencies(Arrays.asList(app)).get(lib0));
+
+            // neither cache may miss that the parent has changed
+            Path parent = repo.resolve("com/example/parent/1.0/parent-1.0.pom");
+            long stamp = Files.getLastModifiedTime(parent).toMillis();
+            Files.write(parent, parentPom("lib1"));
+            Files.setLastModifiedTime(parent, FileTime.fromMillis(stamp + 10000));
+            Map<Coord,Path> paths = new DependencyManager(repo, server.repos(), false, false).
+                resolveDependencies(Arrays.asList(app));
+            assertNull(paths.get(lib0));
+            assertNotNull(paths.get(lib1));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStats () throws Exception {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-stats");
+        final Coord one = new Coord("com.example", "one", "1.0", "jar");
+        Coord two = new Coord("com.example", "two", "1.0", "jar");
+        String onePath = "com/example/one/1.0/one-1.0", libPath = "com/example/lib/1.0/lib-1.0";
+        String twoPath = "com/example/two/1.0/two-1.0";
+        RepoServer server = new RepoServer();
+        System.setProperty("mfetcher.result.cache", "false");
+        try {
+            server.add("/" + onePath + ".pom", RepoServer.pom("one", "<dependencies><dependency>" +
+                "<groupId>com.example</groupId><artifactId>lib</artifactId>" +
+                "<version>1.0</version></dependency></dependencies>"));
+            server.add("/" + onePath + ".jar", new byte[2000]);
+            server.add("/" + libPath + ".pom", RepoServer.pom("lib", ""));
+            server.add("/" + libPath + ".jar", new byte[1000]);
+            server.add("/" + twoPath + ".pom", RepoServer.pom("two", ""));
+            server.add("/" + twoPath + ".jar", new byte[3000]);
+            // two's jar doesn't match its checksum, which is retried, then only warned about
+            server.add("/" + twoPath + ".jar.sha1",
+                       "0000000000000000000000000000000000000000".getBytes(StandardCharsets.UTF_8));
+            String url = server.repos().get(0);
+
+            // resolve both at once, so that only their traces tell their transfers apart
+            final DependencyManager dmgr = new DependencyManager(repo, server.repos(), false, false);
+            final ResolutionStats oneStats = new ResolutionStats();
+            ResolutionStats twoStats = new ResolutionStats();
+            server.delay = 20;
+            CompletableFuture<Map<Coord,Path>> oneResult = CompletableFuture.supplyAsync(
+                new Supplier<Map<Coord,Path>>() {
+                    public Map<Coord,Path> get () {
+                        return dmgr.resolveDependencies(Arrays.asList(one), oneStats);
+                    }
+                });
+            dmgr.resolveDependencies(Arrays.asList(two), twoStats);
+            oneResult.get();
+
+            assertTrue(oneStats.collectNanos() > 0);
+            assertTrue(oneStats.resolveNanos() > 0);
+            assertEquals(0, oneStats.localHits());
+            assertEquals(4, oneStats.remoteFetches());
+            assertEquals(0, oneStats.checksumFailures());
+            assertEquals(0, oneStats.retries());
+            assertEquals(0, oneStats.transferFailures());
+            long oneBytes = 0;
+            for (String path : new String[] { onePath + ".pom", onePath + ".jar",
+                                              libPath + ".pom", libPath + ".jar" }) {
+                ResolutionStats.Transfers art = oneStats.artifacts().get(path);
+                assertNotNull(path, art);
+                assertEquals(1, art.count);
+                assertEquals(server.get("/" + path).length, art.bytes);
+                oneBytes += art.bytes;
+            }
+            assertEquals(4, oneStats.artifacts().size());
+            assertEquals(oneBytes, oneStats.downloadBytes());
+            assertEquals(Collections.singleton(url), oneStats.repositories().keySet());
+            assertEquals(4, oneStats.repositories().get(url).count);
+            assertEquals(oneBytes, oneStats.repositories().get(url).bytes);
+
+            assertTrue(twoStats.collectNanos() > 0);
+            assertTrue(twoStats.resolveNanos() > 0);
+            assertEquals(2, twoStats.remoteFetches());
+            assertEquals(2, twoStats.checksumFailures()); // the first try and the retry
+            assertEquals(1, twoStats.retries());
+            assertEquals(new HashSet<String>(Arrays.asList(twoPath + ".pom", twoPath + ".jar")),
+                         twoStats.artifacts().keySet());
+            assertEquals(3000, twoStats.artifacts().get(twoPath + ".jar").bytes);
+            assertEquals(2, twoStats.repositories().get(url).count);
+
+            // a second resolution finds the jars locally (the POMs' descriptors are cached)
+            ResolutionStats again = new ResolutionStats();
+            new DependencyManager(repo, server.repos(), false, false).
+                resolveDependencies(Arrays.asList(one), again);
+            assertEquals(2, again.localHits());
+            assertEquals(0, again.remoteFetches());
+            assertEquals(0, again.downloadBytes());
+            assertTrue(again.artifacts().isEmpty());
+            assertTrue(again.repositories().isEmpty());
+        } finally {
+            System.clearProperty("mfetcher.result.cache");
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testGraphReleased () throws IOException {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-released");
+        RepoServer server = new RepoServer();
+        try {
+            server.add("/com/example/app/1.0/app-1.0.pom", RepoServer.pom(
+                "app", "<dependencies><dependency><groupId>com.example</groupId>" +
+                "<artifactId>lib</artifactId><version>1.0</version></dependency></dependencies>"));
+            server.add("/com/example/app/1.0/app-1.0.jar", new byte[1024]);
+            server.add("/com/example/lib/1.0/lib-1.0.pom", RepoServer.pom("lib", ""));
+            server.add("/com/example/lib/1.0/lib-1.0.jar", new byte[1024]);
+
+            // note the graph's nodes as they are resolved
+            final List<WeakReference<DependencyNode>> nodes =
+                Collections.synchronizedList(new ArrayList<WeakReference<DependencyNode>>());
+            DependencyManager dmgr = new DependencyManager(repo, server.repos(), false, false) {
+                @Override protected void onRepositoryEvent (String method, RepositoryEvent event) {
+                    for (RequestTrace trace = event.getTrace(); trace != null;
+                         trace = trace.getParent()) {
+                        Object data = trace.getData();
+                        if (data instanceof DependencyRequest) {
+                            data = ((DependencyRequest)data).getRoot();
+                        }
+                        if (data instanceof DependencyNode) {
+                            nodes.add(new WeakReference<DependencyNode>((DependencyNode)data));
+                        }
+                    }
+                }
+            };
+            Map<Coord,Path> paths = dmgr.resolveDependencies(
+                Arrays.asList(new Coord("com.example", "app", "1.0", "jar")));
+            assertEquals(2, paths.size());
+            assertFalse(nodes.isEmpty());
+
+            // neither the manager (nor the caches it shares) holds on to the graph once the
+            // result (which it has cached) is returned
+            for (int ii = 0; ii < 50 && !released(nodes); ii++) {
+                System.gc();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            assertTrue(released(nodes));
+            assertNotNull(dmgr);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static boolean released (List<WeakReference<DependencyNode>> refs) {
+        synchronized (refs) {
+            for (WeakReference<DependencyNode> ref : refs) if (ref.get() != null) return false;
+        }
+        return true;
+    }
+
+    @Test
+    public void testReceiverLimit () throws IOException {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-receiver");
+        RepoServer server = new RepoServer();
+        System.setProperty("mfetcher.download.threads", "2");
+        // read when the manager is constructed: the receiving resolve must not be answered from
+        // the result of the first
+        System.setProperty("mfetcher.result.cache", "false");
+        try {
+            StringBuilder deps = new StringBuilder("<dependencies>");
+            for (int ii = 0; ii < 8; ii++) {
+                deps.append("<dependency><groupId>com.example</groupId><artifactId>lib").append(ii).
+                    append("</artifactId><version>1.0</version></dependency>");
+                String path = "/com/example/lib" + ii + "/1.0/lib" + ii + "-1.0";
+                server.add(path + ".pom", RepoServer.pom("lib" + ii, ""));
+                server.add(path + ".jar", new byte[1024]);
+            }
+            server.add("/com/example/app/1.0/app-1.0.pom",
+                       RepoServer.pom("app", deps.append("</dependencies>")));
+            server.add("/com/example/app/1.0/app-1.0.jar", new byte[1024]);
+
+            // resolve once to fetch the POMs, so that only the jars are fetched while receiving
+            Coord app = new Coord("com.example", "app", "1.0", "jar");
+            DependencyManager dmgr = new DependencyManager(repo, server.repos(), false, false);
+            for (Path jar : dmgr.resolveDependencies(Arrays.asList(app)).values()) {
+                Files.delete(jar);
+            }
+            server.resetCounts();
+            server.delay = 20;
+            final List<Coord> received = Collections.synchronizedList(new ArrayList<Coord>());
+            Map<Coord,Path> paths = dmgr.resolveStreaming(
+                Arrays.asList(app), new DependencyManager.Receiver() {
+                    public void received (Coord coord, Path path) {
+                        received.add(coord);
+                    }
+                });
+            assertEquals(9, paths.size());
+            assertEquals(paths.keySet(), new HashSet<Coord>(received));
+            assertTrue("Max concurrent " + server.maxActive.get(), server.maxActive.get() <= 2);
+        } finally {
+            System.clearProperty("mfetcher.download.threads");
+            System.clearProperty("mfetcher.result.cache");
+            server.stop();
+        }
+    }
+
+    private static byte[] parentPom (String lib) {
+        return RepoServer.pom("parent", "<packaging>pom</packaging><dependencies><dependency>" +
+                              "<groupId>com.example</groupId><artifactId>" + lib + "</artifactId>" +
+                              "<version>1.0</version></dependency></dependencies>");
+    }
+
+    /** Starts a server holding {@link #BIG}, listed in its metadata. */
+    private RepoServer bigServer () throws IOException {
+        RepoServer server = new RepoServer();
+        byte[] jar = new byte[64*1024];
+        new Random(42).nextBytes(jar);
+        server.add(BIG_JAR, jar);
+        server.add(BIG_JAR.replace(".jar", ".pom"), RepoServer.pom("big", ""));
+        server.addMetadata("big", "1.0");
+        return server;
+    }
+
+    /** Returns a manager that refreshes smartly from {@code server} and counts the downloads
+      * that fail their checksums in {@code corrupted}. */
+    private static DependencyManager smartManager (Path repo, RepoServer server,
+                                                   final AtomicInteger corrupted) {
+        return new DependencyManager(repo, server.repos(), DependencyManager.Refresh.SMART, false) {
+            @Override protected void onTransferEvent (String method, TransferEvent event) {
+                if (method.equals("transferCorrupted")) corrupted.incrementAndGet();
+            }
+        };
+    }
+
+    private static long size (Path dir) throws IOException {
+        // count the artifacts, not the contents of .mfetcher and .locks
+        long size = 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Iterator<Path> iter = files.iterator(); iter.hasNext(); ) {
+                Path file = iter.next();
+                if (Files.isRegularFile(file) && !file.toString().contains("/.")) {
+                    size += Files.size(file);
+                }
+            }
+        }
+        return size;
+    }
+
+    @Test
+    public void testLean () {
+        List<Coord> roots = Arrays.asList(new Coord("com.threerings", "ooo-app", "1.0.1", "jar"));
+        System.setProperty("mfetcher.result.cache", "false");
+        try {
+            System.setProperty("mfetcher.lean", "false");
+            Map<Coord,Path> verbose = new DependencyManager(m2, null, false, false).
+                resolveDependencies(roots);
+            System.setProperty("mfetcher.lean", "true");
+            Map<Coord,Path> lean = new DependencyManager(m2, null, false, false).
+                resolveDependencies(roots);
+            assertEquals(new ArrayList<Map.Entry<Coord,Path>>(verbose.entrySet()),
+                         new ArrayList<Map.Entry<Coord,Path>>(lean.entrySet()));
+        } finally {
+            System.clearProperty("mfetcher.result.cache");
+            System.clearProperty("mfetcher.lean");
+        }
+    }
+
     @Test
     public void testConflict () {
         DependencyManager dmgr = new DependencyManager(m2, null, false, false);
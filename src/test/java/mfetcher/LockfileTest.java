@@ -0,0 +1,66 @@
+package mfetcher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class LockfileTest {
+
+    public final Coord ROOT = new Coord("com.example", "app", "1.0", "jar").withExclusions(
+        Coord.parseExclusions("org.unwanted:thing"));
+    public final Coord LIB = new Coord("com.example", "lib", "2.0", "jar", "natives");
+
+    @Test
+    public void testRoundTrip () throws IOException {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-lockrepo").
+            toAbsolutePath();
+        Map<Coord,Path> jars = new LinkedHashMap<Coord,Path>();
+        jars.put(ROOT.withExclusions(null), write(repo, "com/example/app/1.0/app-1.0.jar", "app"));
+        jars.put(LIB, write(repo, "com/example/lib/2.0/lib-2.0-natives.jar", "lib"));
+
+        Path file = repo.resolve("app.lock");
+        Lockfile.create(repo, Arrays.asList(ROOT), jars).write(file);
+        Lockfile lock = Lockfile.read(file);
+        assertEquals(Arrays.asList(ROOT), lock.roots);
+        assertEquals(ROOT.exclusions, lock.roots.get(0).exclusions);
+        assertEquals(jars, lock.resolve(repo, true, null));
+        assertEquals(new ArrayList<Coord>(jars.keySet()),
+                     new ArrayList<Coord>(lock.resolve(repo, true, null).keySet()));
+
+        // tampering is only noticed when verifying, and then the fallback is used
+        write(repo, "com/example/lib/2.0/lib-2.0-natives.jar", "LIB");
+        assertEquals(jars, lock.resolve(repo, false, null));
+        final Map<Coord,Path> fallback = Collections.<Coord,Path>emptyMap();
+        assertSame(fallback, lock.resolve(repo, true, new Lockfile.Resolver() {
+            public Map<Coord,Path> resolve (List<Coord> roots) {
+                assertEquals(Arrays.asList(ROOT), roots);
+                return fallback;
+            }
+        }));
+
+        // missing artifacts always use the fallback (or fail without one)
+        Files.delete(jars.get(LIB));
+        try {
+            lock.resolve(repo, false, null);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static Path write (Path repo, String path, String data) throws IOException {
+        Path file = repo.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, data.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -18,4 +18,11 @@ public class MavenSettingsTest {
         }
         System.out.println("End Maven proxies: -----------------");
     }
+
+    @Test public void testShared () {
+        MavenSettings ms = MavenSettings.shared();
+        assertTrue(ms.isCurrent());
+        assertSame(ms, MavenSettings.shared());
+        assertSame(ms.getMirrorSelector(), MavenSettings.shared().getMirrorSelector());
+    }
 }
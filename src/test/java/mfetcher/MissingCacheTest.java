@@ -0,0 +1,33 @@
+package mfetcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class MissingCacheTest {
+
+    public final String REPO = "http://repo.example.com/";
+    public final String ART = "com.example:lib:jar:1.0";
+
+    @Test
+    public void testTtls () throws Exception {
+        Path repo = Files.createTempDirectory(Paths.get("target"), "test-missing");
+        // managers with different TTLs share one cache, each believing it for as long as it likes
+        MissingCache cache = MissingCache.forRepo(repo);
+        assertSame(cache, MissingCache.forRepo(repo));
+        cache.missing(REPO, ART);
+        Thread.sleep(20);
+        assertTrue(cache.isMissing(REPO, ART, 60*1000L));
+        assertFalse(cache.isMissing(REPO, ART, 10));
+        assertTrue(cache.isMissing(REPO, ART, 60*1000L));
+
+        // the log keeps what only the longer TTL still believes
+        MissingCache reread = new MissingCache(repo.resolve(".mfetcher").resolve("missing.log"));
+        assertFalse(reread.isMissing(REPO, ART, 10));
+        assertTrue(reread.isMissing(REPO, ART, 60*1000L));
+        cache.found(REPO, ART);
+        assertFalse(cache.isMissing(REPO, ART, 60*1000L));
+    }
+}
@@ -0,0 +1,232 @@
+package mfetcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A Maven repository served over HTTP on the loopback interface, for tests (and the benchmarks,
+ * which build against the test jar). It understands
+ * {@code HEAD}, {@code Range}, {@code If-Range} and {@code If-None-Match} (with an {@code ETag}
+ * derived from a file's contents), and counts what it is asked for.
+ */
+public class RepoServer {
+
+    /** Files are served only once this many millis have passed (to overlap requests). */
+    public volatile int delay;
+    /** When true, responses for the tail of a file are cut off half way through. */
+    public final AtomicBoolean failing = new AtomicBoolean();
+    /** The greatest number of requests awaiting a response at once. */
+    public final AtomicInteger maxActive = new AtomicInteger();
+    /** The number of {@code 304 Not Modified} responses sent. */
+    public final AtomicInteger notModified = new AtomicInteger();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<String,byte[]> files = new ConcurrentHashMap<String,byte[]>();
+    private final ConcurrentMap<String,AtomicLong> served =
+        new ConcurrentHashMap<String,AtomicLong>();
+    private final ConcurrentMap<String,AtomicInteger> ranges =
+        new ConcurrentHashMap<String,AtomicInteger>();
+    private final Map<String,Headers> requests = new ConcurrentHashMap<String,Headers>();
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    public RepoServer () throws IOException {
+        // the JDK server writes headers and body separately, which (with Nagle's algorithm and
+        // delayed ACKs) adds ~40ms to every response, swamping anything we'd want to measure
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle (HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** Returns the repositories to hand to a {@link DependencyManager} to use this server. */
+    public List<String> repos () {
+        return Arrays.asList("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+    }
+
+    /** Returns the data served at {@code path}. */
+    public byte[] get (String path) {
+        return files.get(path);
+    }
+
+    /** Serves {@code data} at {@code path}, along with its SHA-1 at {@code path.sha1}. */
+    public void add (String path, byte[] data) throws IOException {
+        files.put(path, data);
+        files.put(path + ".sha1", Digests.sha1Hex(data).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Serves every file under {@code root} (checksums and all, as they are) at its path relative
+      * to {@code root}. */
+    public void addTree (Path root) throws IOException {
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Iterator<Path> iter = tree.iterator(); iter.hasNext(); ) {
+                Path file = iter.next();
+                if (!Files.isRegularFile(file)) continue;
+                String path = root.relativize(file).toString().replace(File.separatorChar, '/');
+                files.put("/" + path, Files.readAllBytes(file));
+            }
+        }
+    }
+
+    /** Serves {@code artifactId}'s version metadata, listing {@code versions}. */
+    public void addMetadata (String artifactId, String... versions) throws IOException {
+        StringBuilder xml = new StringBuilder("<metadata><groupId>com.example</groupId>");
+        xml.append("<artifactId>").append(artifactId).append("</artifactId><versioning>");
+        xml.append("<release>").append(versions[versions.length-1]).append("</release><versions>");
+        for (String version : versions) xml.append("<version>").append(version).append("</version>");
+        xml.append("</versions></versioning></metadata>");
+        add("/com/example/" + artifactId + "/maven-metadata.xml",
+            xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the number of bytes of {@code path} served so far. */
+    public long served (String path) {
+        AtomicLong served = this.served.get(path);
+        return served == null ? 0 : served.get();
+    }
+
+    /** Returns the number of ranged requests for {@code path} served so far. */
+    public int ranges (String path) {
+        AtomicInteger ranges = this.ranges.get(path);
+        return ranges == null ? 0 : ranges.get();
+    }
+
+    /** Returns the headers of the last request for {@code path}, or null if there was none. */
+    public Headers request (String path) {
+        return requests.get(path);
+    }
+
+    /** Forgets how much has been served so far. */
+    public void resetCounts () {
+        served.clear();
+        ranges.clear();
+        requests.clear();
+        notModified.set(0);
+        maxActive.set(0);
+    }
+
+    public void stop () {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** Returns a POM for {@code com.example:<artifactId>:1.0}, with {@code extra} elements. */
+    public static byte[] pom (String artifactId, CharSequence extra) {
+        return ("<project><modelVersion>4.0.0</modelVersion><groupId>com.example</groupId>" +
+                "<artifactId>" + artifactId + "</artifactId><version>1.0</version>" + extra +
+                "</project>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected void serve (HttpExchange exchange) throws IOException {
+        int now = active.incrementAndGet();
+        for (int max = maxActive.get(); now > max && !maxActive.compareAndSet(max, now);
+             max = maxActive.get());
+        try {
+            if (delay > 0) Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            // a request counts until we respond, as the client may send its next one as soon as
+            // it has our response, before we'd get around to uncounting this one
+            active.decrementAndGet();
+        }
+        serveFile(exchange);
+    }
+
+    protected void serveFile (HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.put(path, exchange.getRequestHeaders());
+        byte[] data = files.get(path);
+        if (data == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        int start = 0, end = data.length;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher m = (range == null) ? null : RANGE.matcher(range);
+        String etag = "\"" + Digests.sha1Hex(data) + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+            // the JDK's server drops the connection after a HEAD, so say so, lest it be reused
+            exchange.getResponseHeaders().set("Connection", "close");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        // if the file has changed since the client started, it must have the whole thing
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (ifRange != null && !ifRange.equals(etag)) m = null;
+        if (m != null && m.matches()) {
+            start = Integer.parseInt(m.group(1));
+            end = Math.min(Integer.parseInt(m.group(2)) + 1, data.length);
+            exchange.getResponseHeaders().set(
+                "Content-Range", "bytes " + start + "-" + (end-1) + "/" + data.length);
+            exchange.sendResponseHeaders(206, end - start);
+            counter(ranges, path, new AtomicInteger()).incrementAndGet();
+        } else exchange.sendResponseHeaders(200, data.length);
+
+        // when failing, cut off the last chunk half way through
+        int stop = (failing.get() && end == data.length && start > 0) ? (start + end) / 2 : end;
+        AtomicLong served = counter(this.served, path, new AtomicLong());
+        OutputStream out = exchange.getResponseBody();
+        try {
+            for (int pos = start; pos < stop; pos += 8192) {
+                int length = Math.min(8192, stop - pos);
+                out.write(data, pos, length);
+                served.addAndGet(length);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static <T> T counter (ConcurrentMap<String,T> counters, String path, T fresh) {
+        T counter = counters.get(path);
+        if (counter == null) {
+            counter = counters.putIfAbsent(path, fresh);
+            if (counter == null) counter = fresh;
+        }
+        return counter;
+    }
+}